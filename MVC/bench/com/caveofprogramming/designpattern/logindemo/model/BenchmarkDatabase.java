@@ -0,0 +1,83 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opens the database the benchmarks run against and fills it with people.
+ * <p>
+ * By default the benchmarks use a new {@code EmbeddedDatabase}, so they run anywhere
+ * and measure the DAO and Model code rather than the network. Passing
+ * {@code -p database=MYSQL} to JMH runs them against the MySQL server configured in
+ * {@code Database} instead, through exactly the same {@code DAOFactory} calls.
+ * </p>
+ * <p>
+ * {@code fill()} and the benchmarks delete every row of the {@code people} table, so
+ * they refuse to run against the application's {@code patterns} schema. Create a copy
+ * of it from {@code db/schema.sql} and pass its name with, for example,
+ * {@code -jvmArgs -Dlogindemo.db.schema=patterns_bench}.
+ * </p>
+ */
+final class BenchmarkDatabase {
+
+    // People are inserted in chunks, so filling a million rows does not need a million beans at once.
+    private static final int FILL_CHUNK = 10000;
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * @param name {@code "EMBEDDED"} or {@code "MYSQL"}.
+     * @return a factory for the named database, connected and ready to use.
+     */
+    static DAOFactory open(String name) throws Exception {
+        switch (name) {
+            case "EMBEDDED":
+                // A database of its own, so one benchmark never sees another's rows.
+                return new EmbeddedDAOFactory(new EmbeddedDatabase());
+            case "MYSQL":
+                String schema = System.getProperty("logindemo.db.schema", "patterns");
+                if (schema.equals("patterns"))
+                    throw new IllegalStateException("The benchmarks would delete the people of the"
+                            + " patterns schema; set -Dlogindemo.db.schema to a schema of their own");
+                Database.getInstance().connect();
+                return DAOFactory.getFactory(DAOFactory.MYSQL);
+            default:
+                throw new IllegalArgumentException("Unknown database: " + name);
+        }
+    }
+
+    static void close(String name) {
+        if (name.equals("MYSQL"))
+            Database.getInstance().disconnect();
+    }
+
+    /**
+     * Empties the {@code people} table and inserts the given number of people.
+     *
+     * @return the ids of the inserted people.
+     */
+    static int[] fill(PersonDAO dao, int rows) throws SQLException {
+        dao.deleteAll();
+
+        int[] ids = new int[rows];
+        for (int start = 0; start < rows; start += FILL_CHUNK) {
+            List<Person> chunk = newPeople(start, Math.min(FILL_CHUNK, rows - start));
+            dao.addPeople(chunk);
+            for (int i = 0; i < chunk.size(); i++)
+                ids[start + i] = chunk.get(i).getId();
+        }
+        return ids;
+    }
+
+    /**
+     * @return {@code count} new people, numbered from {@code first}.
+     */
+    static List<Person> newPeople(int first, int count) {
+        List<Person> people = new ArrayList<Person>(count);
+        for (int i = first; i < first + count; i++)
+            people.add(new Person("Person " + i, "password" + i));
+        return people;
+    }
+}
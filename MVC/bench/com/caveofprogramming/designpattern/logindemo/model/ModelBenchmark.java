@@ -0,0 +1,106 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of {@code Model.load()} and {@code Model.save()} with 1k, 100k and
+ * 1M people, going through the {@code AsyncPersonDAO} the way the application does.
+ * <p>
+ * {@code load()} reads a table holding {@code rows} people into a new model, and
+ * {@code save()} writes a model holding {@code rows} new people into an empty table.
+ * Each call does a lot of work, so every call is timed on its own.
+ * </p>
+ *
+ * @see PersonDAOBenchmark for how to build and run the benchmarks.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ModelBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class LoadState {
+        @Param({"1000", "100000", "1000000"})
+        public int rows;
+
+        @Param({"EMBEDDED"})
+        public String database;
+
+        AsyncPersonDAO personDAO;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            PersonDAO dao = BenchmarkDatabase.open(database).getPersonDAO();
+            BenchmarkDatabase.fill(dao, rows);
+            personDAO = new AsyncPersonDAO(dao);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            personDAO.getPersonDAO().deleteAll();
+            personDAO.shutdown();
+            BenchmarkDatabase.close(database);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SaveState {
+        @Param({"1000", "100000", "1000000"})
+        public int rows;
+
+        @Param({"EMBEDDED"})
+        public String database;
+
+        AsyncPersonDAO personDAO;
+        Model model;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            personDAO = new AsyncPersonDAO(BenchmarkDatabase.open(database).getPersonDAO());
+        }
+
+        // Every save starts from an empty table and a model full of unsaved people.
+        @Setup(Level.Invocation)
+        public void prepareModel() throws Exception {
+            personDAO.getPersonDAO().deleteAll();
+            model = new Model(personDAO);
+            for (Person person : BenchmarkDatabase.newPeople(0, rows))
+                model.addPerson(person);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            personDAO.getPersonDAO().deleteAll();
+            personDAO.shutdown();
+            BenchmarkDatabase.close(database);
+        }
+    }
+
+    @Benchmark
+    public Model load(LoadState state) {
+        Model model = new Model(state.personDAO);
+        model.load().join();
+        return model;
+    }
+
+    @Benchmark
+    public Model save(SaveState state) {
+        state.model.save().join();
+        return state.model;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ModelBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
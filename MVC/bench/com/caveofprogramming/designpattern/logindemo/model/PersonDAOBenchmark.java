@@ -0,0 +1,119 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the {@code PersonDAO} obtained through {@code DAOFactory}, with a
+ * {@code people} table holding 1k, 100k and 1M rows:
+ * <ul>
+ *     <li>{@code addPerson} and {@code addPeople}: inserting one person per call against
+ *     inserting a batch, both reported per person. The inserted rows are deleted after
+ *     every call, outside the measured time, so the table keeps its size.</li>
+ *     <li>{@code getPerson}: a point lookup of a random existing id.</li>
+ *     <li>{@code getPeople}: a scan of the whole table.</li>
+ * </ul>
+ * <p>
+ * The benchmarks are compiled with {@code jmh-core} on the classpath and
+ * {@code jmh-generator-annprocess} as annotation processor, which generates the harness
+ * classes, then run with {@code main()} or {@code org.openjdk.jmh.Main}.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersonDAOBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"EMBEDDED"})
+    public String database;
+
+    private PersonDAO dao;
+    private int[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dao = BenchmarkDatabase.open(database).getPersonDAO();
+        ids = BenchmarkDatabase.fill(dao, rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        dao.deleteAll();
+        BenchmarkDatabase.close(database);
+    }
+
+    /**
+     * The ids inserted by one call of an insert benchmark. A state of its own, so only
+     * the insert benchmarks pay for a fixture run after every call.
+     */
+    @State(Scope.Thread)
+    public static class Inserted {
+        private PersonDAO dao;
+        private final List<Integer> ids = new ArrayList<Integer>();
+
+        @Setup(Level.Trial)
+        public void setUp(PersonDAOBenchmark benchmark) {
+            dao = benchmark.dao;
+        }
+
+        @TearDown(Level.Invocation)
+        public void deleteInserted() throws SQLException {
+            for (int id : ids)
+                dao.deletePerson(id);
+            ids.clear();
+        }
+    }
+
+    @Benchmark
+    public int addPerson(Inserted inserted) throws SQLException {
+        Person person = new Person("New person", "password");
+        int added = dao.addPerson(person);
+        inserted.ids.add(person.getId());
+        return added;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int addPeople(Inserted inserted) throws SQLException {
+        List<Person> people = BenchmarkDatabase.newPeople(0, BATCH_SIZE);
+        int added = dao.addPeople(people);
+        for (Person person : people)
+            inserted.ids.add(person.getId());
+        return added;
+    }
+
+    @Benchmark
+    public Person getPerson() throws SQLException {
+        return dao.getPerson(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Person> getPeople() throws SQLException {
+        return dao.getPeople();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PersonDAOBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
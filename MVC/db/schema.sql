@@ -0,0 +1,107 @@
+-- Schema of the "patterns" database used by the MySQL DAOs of the logindemo application.
+
+CREATE TABLE IF NOT EXISTS people (
+    id       INT          NOT NULL AUTO_INCREMENT,
+    name     VARCHAR(100) NOT NULL,
+    password VARCHAR(100) NOT NULL,
+    -- Incremented by every update; MySQLPersonDAO only updates a row whose version has
+    -- not changed since it was read (optimistic concurrency control).
+    version  INT          NOT NULL DEFAULT 0,
+    -- Number of the last insert or update of the row, set by the triggers below from
+    -- people_sequence; MySQLPersonDAO.getChangedSince() reads the rows after a watermark.
+    seq      BIGINT       NOT NULL DEFAULT 0,
+    PRIMARY KEY (id),
+    -- Serves MySQLPersonDAO.findByName(): "name LIKE 'prefix%' ORDER BY name, id" is a
+    -- range scan on this index. InnoDB secondary indexes already end with the primary key.
+    KEY idx_people_name (name),
+    -- Serves MySQLPersonDAO.getChangedSince(): "seq > ? AND seq <= ?" is a range scan.
+    KEY idx_people_seq (seq)
+);
+
+-- Existing databases:
+-- ALTER TABLE people ADD COLUMN version INT NOT NULL DEFAULT 0;
+-- ALTER TABLE people ADD COLUMN seq BIGINT NOT NULL DEFAULT 0;
+-- ALTER TABLE people ADD KEY idx_people_name (name);
+-- ALTER TABLE people ADD KEY idx_people_seq (seq);
+
+-- The next id to hand out, for ShardedPersonDAO: its first shard reserves blocks of ids
+-- here with MySQLPersonDAO.reserveIds(), so no two application instances write the same
+-- id. It starts after the people already in the table.
+CREATE TABLE IF NOT EXISTS people_ids (
+    id      TINYINT NOT NULL,
+    next_id INT     NOT NULL,
+    PRIMARY KEY (id)
+);
+INSERT IGNORE INTO people_ids (id, next_id) SELECT 1, COALESCE(MAX(id), 0) + 1 FROM people;
+
+-- The single row counting the writes to people. "value" is the current watermark;
+-- "pruned" is the highest number whose tombstones may have been purged, so an older
+-- watermark gets a snapshot instead of the changes.
+CREATE TABLE IF NOT EXISTS people_sequence (
+    id     TINYINT NOT NULL,
+    value  BIGINT  NOT NULL DEFAULT 0,
+    pruned BIGINT  NOT NULL DEFAULT 0,
+    PRIMARY KEY (id)
+);
+INSERT IGNORE INTO people_sequence (id, value, pruned) VALUES (1, 0, 0);
+
+-- One row per deleted person, numbered like the writes, so readers of the changes also
+-- learn about deletes. Old tombstones can be purged once every client has refreshed:
+--   DELETE FROM people_tombstones WHERE seq <= @upTo;
+--   UPDATE people_sequence SET pruned = @upTo WHERE id = 1;
+CREATE TABLE IF NOT EXISTS people_tombstones (
+    id  INT    NOT NULL,
+    seq BIGINT NOT NULL,
+    PRIMARY KEY (id),
+    KEY idx_people_tombstones_seq (seq)
+);
+
+-- Every write takes the next number. The UPDATE locks the counter row until the writing
+-- transaction commits, so writes commit in the order of their numbers and a reader never
+-- sees a number before a smaller one that is still to be committed.
+--
+-- The price is that writes to people are serialized: a transaction that inserts, updates
+-- or deletes a person holds the counter row until it commits, so only one writer makes
+-- progress at a time, however many pooled connections there are. Batching still pays off,
+-- since each chunk takes the lock once per transaction rather than once per round trip,
+-- but more writers do not add throughput. Two transactions that lock people rows in
+-- different orders can also deadlock on the counter row; InnoDB rolls one of them back,
+-- and MySQLPersonDAO sends that chunk again.
+DROP TRIGGER IF EXISTS people_before_insert;
+DROP TRIGGER IF EXISTS people_before_update;
+DROP TRIGGER IF EXISTS people_after_delete;
+
+DELIMITER //
+CREATE TRIGGER people_before_insert BEFORE INSERT ON people FOR EACH ROW
+BEGIN
+    DECLARE next_seq BIGINT;
+    UPDATE people_sequence SET value = value + 1 WHERE id = 1;
+    SELECT value INTO next_seq FROM people_sequence WHERE id = 1;
+    SET NEW.seq = next_seq;
+END//
+
+CREATE TRIGGER people_before_update BEFORE UPDATE ON people FOR EACH ROW
+BEGIN
+    DECLARE next_seq BIGINT;
+    UPDATE people_sequence SET value = value + 1 WHERE id = 1;
+    SELECT value INTO next_seq FROM people_sequence WHERE id = 1;
+    SET NEW.seq = next_seq;
+END//
+
+CREATE TRIGGER people_after_delete AFTER DELETE ON people FOR EACH ROW
+BEGIN
+    DECLARE next_seq BIGINT;
+    UPDATE people_sequence SET value = value + 1 WHERE id = 1;
+    SELECT value INTO next_seq FROM people_sequence WHERE id = 1;
+    INSERT INTO people_tombstones (id, seq) VALUES (OLD.id, next_seq)
+        ON DUPLICATE KEY UPDATE seq = next_seq;
+END//
+DELIMITER ;
+
+-- Audit log written in batches by MySQLLogDAO.
+CREATE TABLE IF NOT EXISTS log (
+    id      INT          NOT NULL AUTO_INCREMENT,
+    date    TIMESTAMP(3) NOT NULL,
+    message VARCHAR(255) NOT NULL,
+    PRIMARY KEY (id)
+);
@@ -2,6 +2,7 @@ package com.caveofprogramming.designpattern.logindemo;
 
 import com.caveofprogramming.designpattern.logindemo.controller.Controller;
 import com.caveofprogramming.designpattern.logindemo.model.Model;
+import com.caveofprogramming.designpattern.logindemo.view.PagedPersonListModel;
 import com.caveofprogramming.designpattern.logindemo.view.View;
 
 import javax.swing.*;
@@ -88,6 +89,7 @@ public class Application {
         view.setCreateUserListener(controller);
         view.setSaveListener(controller);
         view.setAppListener(controller);
+        view.setCancelListener(controller);
         /* The controller is abstracted behind an interface, ensuring that
          * the View and the Controller are not tightly coupled.
          */
@@ -101,5 +103,27 @@ public class Application {
          * the view package.
          */
         model.setPeopleUpdatedListener(view);
+
+        /*
+         * The model talks to the database on background threads. Asking it to
+         * apply the results on the event dispatch thread keeps all the changes
+         * to the model, and so all the updates of the view, on a single thread.
+         */
+        model.setEventExecutor(SwingUtilities::invokeLater);
+
+        /*
+         * With -Dlogindemo.pagedList=true the list of people reads the database
+         * page by page as it is scrolled, instead of loading every person into
+         * the model when the window opens.
+         */
+        if (Boolean.getBoolean("logindemo.pagedList"))
+            view.setPagedListModel(new PagedPersonListModel(model.getPersonDAO()));
+
+        /*
+         * With -Dlogindemo.autosave=true every change is written in the background,
+         * 100 changes at a time or 2 seconds after it is made, without pressing Save.
+         */
+        if (Boolean.getBoolean("logindemo.autosave"))
+            model.setAutosave(100, 2000);
     }
 }
@@ -3,7 +3,10 @@ package com.caveofprogramming.designpattern.logindemo.controller;
 import com.caveofprogramming.designpattern.logindemo.model.*;
 import com.caveofprogramming.designpattern.logindemo.view.*;
 
-import java.sql.SQLException;
+import java.beans.PropertyChangeEvent;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This class handles the business logic of the application.
@@ -15,10 +18,21 @@ import java.sql.SQLException;
  * The {@code Controller} sends commands to both the View and the Model. It is
  * almost certainly listening to the View, but may or may not listen to the Model.
  */
-public class Controller implements CreateUserListener, SaveListener, AppListener {
+public class Controller implements CreateUserListener, SaveListener, AppListener, CancelListener {
+    // How long closing the application waits for the unsaved changes to be written.
+    private static final long CLOSE_TIMEOUT = 10000;
+
     private final Model model;
     private final View view;
 
+    // The background tasks running, if any. Only used on the event dispatch thread.
+    private LoadWorker loadWorker;
+    private SaveWorker saveWorker;
+    // Set when a save is requested while another one runs; one more save then follows it.
+    private boolean saveRequested;
+    // Set by onClose(); the model cannot reach the database afterwards.
+    private boolean closed;
+
     /**
      * The {@code Controller} constructor receives references to the {@code view} and
      * the {@code model}. This allows the {@code Controller} to interact with both components.
@@ -51,15 +65,74 @@ public class Controller implements CreateUserListener, SaveListener, AppListener
 
     /**
      * Persists new or updated {@code Person} instances from the GUI's
-     * list of people to the {@code Database}.
+     * list of people to the {@code Database}. The save runs in a background
+     * {@code SaveWorker}, so the GUI keeps responding while the database works.
+     * <p>
+     * Saves requested while a save is running are coalesced: a single save follows
+     * the running one and writes every change made in the meantime.
+     * </p>
      */
     @Override
     public void onSave() {
-        try {
-            model.save();
-        } catch (Exception e) {
-            view.showError("Error saving to the database");
+        if (saveWorker != null) {
+            saveRequested = true;
+            return;
         }
+        saveRequested = false;
+        saveWorker = new SaveWorker(model, view, this::onSaveFinished);
+        saveWorker.addPropertyChangeListener(event -> showProgress("Saving", event));
+        saveWorker.execute();
+    }
+
+    /**
+     * Stops the running load or save after its current chunk. A cancelled save
+     * keeps its unwritten changes for the next save.
+     */
+    @Override
+    public void onCancel() {
+        if (loadWorker != null)
+            loadWorker.requestCancel();
+        if (saveWorker != null) {
+            saveRequested = false;
+            saveWorker.requestCancel();
+        }
+    }
+
+    private void onLoadFinished() {
+        loadWorker = null;
+        if (saveWorker == null)
+            view.hideProgress();
+    }
+
+    private void onSaveFinished() {
+        saveWorker = null;
+        if (closed)
+            return;
+        if (saveRequested) {
+            onSave();
+        } else if (loadWorker == null) {
+            view.hideProgress();
+            refresh();
+        }
+    }
+
+    // Shows the changes other users saved meanwhile. Only the rows changed since the last
+    // load or refresh are read; the paged list reads its own rows instead.
+    private void refresh() {
+        if (view.getPagedListModel() != null || model.getWatermark() == 0)
+            return;
+        model.refresh().exceptionally(e -> {
+            System.out.println("Can't refresh the people: " + e.getMessage());
+            return null;
+        });
+    }
+
+    // Forwards the "progress" property of a running worker to the view. Progress
+    // events are delivered late, so those of a finished worker are ignored.
+    private void showProgress(String task, PropertyChangeEvent event) {
+        boolean running = event.getSource() == loadWorker || event.getSource() == saveWorker;
+        if (running && "progress".equals(event.getPropertyName()))
+            view.showProgress(task, (Integer) event.getNewValue());
     }
 
     /* **************** Singleton pattern *********************** */
@@ -71,30 +144,58 @@ public class Controller implements CreateUserListener, SaveListener, AppListener
      */
 
     /**
-     * Connects to the database.
+     * Connects to the database and loads the people in a background
+     * {@code LoadWorker}, which fills the list chunk by chunk.
      * Implements singleton pattern static methods.
      */
     @Override
     public void onOpen() {
-        try {
-            Database.getInstance().connect();
-        } catch (Exception e) {
-            view.showError("Unable to connect to the database");
-        }
-
-        try {
-            model.load();
-        } catch (Exception e) {
-            view.showError("Error loading data from database");
-        }
+        model.clear();
+        loadWorker = new LoadWorker(model, view, this::onLoadFinished);
+        loadWorker.addPropertyChangeListener(event -> showProgress("Loading", event));
+        loadWorker.execute();
     }
 
     /**
-     * Disconnects from the database.
+     * Stops a running load, writes the changes that are still unsaved, such as those
+     * queued by autosave, and disconnects from the database.
+     * The window is closing, so this method waits for the writes to finish.
      * Implements singleton pattern static methods.
      */
     @Override
     public void onClose() {
+        if (loadWorker != null)
+            loadWorker.requestCancel();
+
+        // A running save holds changes the model no longer has, so let it finish first.
+        // This method runs on the event dispatch thread, so done() cannot run before the
+        // model is closed: the changes the save did not write are handed back here, and
+        // close() writes them. A save still queued behind an autosave holds no changes, and
+        // cannot take them while this thread waits, so it is cancelled instead.
+        if (saveWorker != null && !saveWorker.hasChanges()) {
+            saveWorker.requestCancel();
+        } else if (saveWorker != null) {
+            boolean stopped = true;
+            try {
+                saveWorker.get(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                System.out.println("Can't finish saving: " + e.getMessage());
+            } catch (TimeoutException e) {
+                // Still writing, so its changes cannot be handed back safely.
+                System.out.println("Can't finish saving in time");
+                stopped = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = false;
+            }
+            if (stopped)
+                saveWorker.finishSave();
+        }
+
+        closed = true;
+        model.close(CLOSE_TIMEOUT);
+        // Writes the log entries still waiting, while the database is still connected.
+        DAOFactory.closeAll();
         Database.getInstance().disconnect();
     }
     /* Notes on the Singleton:
@@ -108,7 +209,8 @@ public class Controller implements CreateUserListener, SaveListener, AppListener
      * a connection from the pool,use it, and then release it back to the pool.
      * The connection remains available in the pool for future use. This is an
      * excellent way to manage connections if you are willing to handle the
-     * setup.
+     * setup. The Database singleton does exactly that: connect() starts its
+     * ConnectionPool and disconnect() drains it.
      */
     /* ************ End of Singleton pattern ******************* */
 }
@@ -0,0 +1,124 @@
+package com.caveofprogramming.designpattern.logindemo.controller;
+
+import com.caveofprogramming.designpattern.logindemo.model.Database;
+import com.caveofprogramming.designpattern.logindemo.model.Model;
+import com.caveofprogramming.designpattern.logindemo.model.Person;
+import com.caveofprogramming.designpattern.logindemo.model.PersonDAO;
+import com.caveofprogramming.designpattern.logindemo.view.PagedPersonListModel;
+import com.caveofprogramming.designpattern.logindemo.view.View;
+
+import javax.swing.*;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * <p>Connects to the database and loads the people into the {@code Model} on a
+ * background thread, so a slow database never freezes the GUI.</p>
+ * <p>People are read in chunks of {@code CHUNK_SIZE}, following the ids with
+ * {@code getPeopleAfter()}. Each chunk is published to the event dispatch thread as
+ * soon as it is read, so the list fills up while the rest is loading, and the
+ * progress is reported to the {@code View}. {@code requestCancel()} stops the load
+ * after the current chunk, keeping the people loaded so far.</p>
+ * <p>The watermark of the database is read before the first chunk and handed to the
+ * {@code Model} once every chunk is loaded, so later refreshes only read the changes
+ * made since; a change made while loading is read again, which does no harm. The
+ * watermark and the chunks are all read from the primary database: a chunk read from a
+ * replica lagging behind the one that gave the watermark would miss rows for good.</p>
+ * When the {@code View} shows a {@code PagedPersonListModel}, only the connection is
+ * made here and the paged list reads its own rows.
+ */
+class LoadWorker extends SwingWorker<Integer, List<Person>> {
+
+    static final int CHUNK_SIZE = 1000;
+
+    private final Model model;
+    private final View view;
+    private final Runnable onFinished;
+    private volatile boolean cancelRequested;
+    private volatile boolean connected;
+    private volatile long watermark;
+
+    /**
+     * @param onFinished run on the event dispatch thread once the load is over.
+     */
+    LoadWorker(Model model, View view, Runnable onFinished) {
+        this.model = model;
+        this.view = view;
+        this.onFinished = onFinished;
+    }
+
+    /**
+     * Stops the load after the chunk being read. Unlike {@code cancel()}, {@code done()}
+     * is only called once the background thread has really stopped.
+     */
+    void requestCancel() {
+        cancelRequested = true;
+    }
+
+    @Override
+    protected Integer doInBackground() throws Exception {
+        Database.getInstance().connect();
+        connected = true;
+        if (view.getPagedListModel() != null)
+            return 0;
+
+        return Database.getInstance().readFromPrimary(this::load);
+    }
+
+    private int load() throws SQLException {
+        PersonDAO dao = model.getPersonDAO().getPersonDAO();
+        watermark = dao.getChangedSince(Long.MAX_VALUE).getWatermark();
+        int total = dao.countPeople();
+        int loaded = 0;
+        int lastId = 0;
+
+        while (!cancelRequested) {
+            List<Person> chunk = dao.getPeopleAfter(lastId, CHUNK_SIZE);
+            if (chunk.isEmpty())
+                break;
+
+            publish(chunk);
+            loaded += chunk.size();
+            lastId = chunk.get(chunk.size() - 1).getId();
+            // The table may grow while loading, so the count is only an estimate.
+            setProgress(total == 0 ? 100 : Math.min(99, (int) (loaded * 100L / total)));
+
+            if (chunk.size() < CHUNK_SIZE)
+                break;
+        }
+        return loaded;
+    }
+
+    @Override
+    protected void process(List<List<Person>> chunks) {
+        // Chunks published while the EDT was busy are merged into a single update.
+        List<Person> people = new ArrayList<Person>();
+        for (List<Person> chunk : chunks)
+            people.addAll(chunk);
+        model.addLoadedPeople(people);
+    }
+
+    @Override
+    protected void done() {
+        try {
+            get();
+            // A cancelled load misses people that only a full load brings back.
+            if (!cancelRequested)
+                model.setWatermark(watermark);
+            PagedPersonListModel pagedListModel = view.getPagedListModel();
+            if (pagedListModel != null) {
+                pagedListModel.refresh().exceptionally(e -> {
+                    view.showError("Error loading data from database");
+                    return null;
+                });
+            }
+        } catch (ExecutionException e) {
+            view.showError(connected ? "Error loading data from database" : "Unable to connect to the database");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        onFinished.run();
+    }
+}
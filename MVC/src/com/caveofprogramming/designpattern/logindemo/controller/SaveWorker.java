@@ -0,0 +1,100 @@
+package com.caveofprogramming.designpattern.logindemo.controller;
+
+import com.caveofprogramming.designpattern.logindemo.model.ChangeSet;
+import com.caveofprogramming.designpattern.logindemo.model.Model;
+import com.caveofprogramming.designpattern.logindemo.model.OptimisticLockException;
+import com.caveofprogramming.designpattern.logindemo.view.View;
+
+import javax.swing.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * <p>Writes the unsaved changes of the {@code Model} to the database on a background
+ * thread, so a slow database never freezes the GUI.</p>
+ * <p>The worker is queued behind the saves and autosave flushes of the model, so they never
+ * write the same people at the same time. The changes are taken from the model once those
+ * are over, on the event dispatch thread, and written in chunks of {@code CHUNK_SIZE}
+ * people, reporting the progress after each chunk. {@code requestCancel()} stops the save after the current
+ * chunk. Whatever was not written, because of a cancel or an error, is put back into the
+ * model in {@code done()}, so the next save writes it.</p>
+ */
+class SaveWorker extends SwingWorker<Boolean, Void> {
+
+    static final int CHUNK_SIZE = 1000;
+
+    private final Model model;
+    private final View view;
+    private final CompletableFuture<ChangeSet> changes;
+    private final Runnable onFinished;
+    private volatile boolean cancelRequested;
+    // Set once the changes are handed back to the model. Only used on the event dispatch thread.
+    private boolean finished;
+
+    /**
+     * @param onFinished run on the event dispatch thread once the save is over.
+     */
+    SaveWorker(Model model, View view, Runnable onFinished) {
+        this.model = model;
+        this.view = view;
+        this.onFinished = onFinished;
+        this.changes = model.queueChanges();
+    }
+
+    /**
+     * Stops the save after the chunk being written. Unlike {@code cancel()}, {@code done()}
+     * is only called once the background thread has really stopped, so the unwritten
+     * changes can be put back safely.
+     */
+    void requestCancel() {
+        cancelRequested = true;
+    }
+
+    /**
+     * Hands the changes back to the model with {@code Model.finishSave()}, which puts back
+     * whatever was not written. Called by {@code done()}, or earlier by the
+     * {@code Controller} when it cannot wait for {@code done()}; only the first call counts.
+     * Must only be called once the background thread has stopped.
+     */
+    void finishSave() {
+        if (!finished) {
+            finished = true;
+            // Changes not taken yet are handed back as soon as they are.
+            changes.thenAccept(model::finishSave);
+        }
+    }
+
+    /**
+     * @return {@code true} once the changes are taken, {@code false} while the worker
+     * still waits for the saves queued before it.
+     */
+    boolean hasChanges() {
+        return changes.isDone();
+    }
+
+    @Override
+    protected Boolean doInBackground() throws Exception {
+        ChangeSet taken = changes.get();
+        int total = taken.size();
+        return taken.write(model.getPersonDAO().getPersonDAO(), CHUNK_SIZE,
+                written -> setProgress((int) (written * 100L / total)),
+                () -> cancelRequested);
+    }
+
+    @Override
+    protected void done() {
+        finishSave();
+        try {
+            get();
+        } catch (ExecutionException e) {
+            // Conflicts have been resolved by the model by now; the rest was saved.
+            if (e.getCause() instanceof OptimisticLockException)
+                view.showError("Some people were changed by someone else in the meantime");
+            else
+                view.showError("Error saving to the database");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        onFinished.run();
+    }
+}
@@ -0,0 +1,211 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * <p>The {@code AsyncPersonDAO} class wraps any {@code PersonDAO}, such as the one returned
+ * by a {@code DAOFactory}, and runs its methods on a dedicated executor. Every method
+ * returns immediately with a {@code CompletableFuture} that completes once the database
+ * has answered, so the calling thread, typically the Swing event dispatch thread, is
+ * never blocked by database latency.</p>
+ * <p>This is another example of the Decorator pattern: the wrapped {@code PersonDAO} does
+ * not know that it is being called asynchronously. A {@code SQLException} thrown by the
+ * wrapped DAO completes the future exceptionally, wrapped in a {@code CompletionException}.</p>
+ * The executor can use a fixed number of platform threads or, on Java 21 and later,
+ * one virtual thread per call.
+ */
+public class AsyncPersonDAO {
+
+    // Threads of the default executor; matches the default maximum size of the ConnectionPool.
+    private static final int DEFAULT_THREADS = 10;
+
+    private final PersonDAO personDAO;
+    private final ExecutorService executor;
+
+    /**
+     * A unit of work to be run against the wrapped {@code PersonDAO}.
+     *
+     * @param <T> the type of the result.
+     */
+    public interface DAOTask<T> {
+        T run(PersonDAO personDAO) throws SQLException;
+    }
+
+    /**
+     * Wraps the given DAO using a pool of platform threads.
+     *
+     * @param personDAO the DAO whose methods are run asynchronously.
+     */
+    public AsyncPersonDAO(PersonDAO personDAO) {
+        this(personDAO, false);
+    }
+
+    /**
+     * Wraps the given DAO, optionally running each call on its own virtual thread.
+     *
+     * @param personDAO      the DAO whose methods are run asynchronously.
+     * @param virtualThreads {@code true} to use virtual threads when the JVM supports them.
+     */
+    public AsyncPersonDAO(PersonDAO personDAO, boolean virtualThreads) {
+        this(personDAO, newExecutor(virtualThreads, DEFAULT_THREADS));
+    }
+
+    /**
+     * Wraps the given DAO using the given executor.
+     *
+     * @param personDAO the DAO whose methods are run asynchronously.
+     * @param executor  the executor the DAO methods are run on.
+     */
+    public AsyncPersonDAO(PersonDAO personDAO, ExecutorService executor) {
+        this.personDAO = personDAO;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates an executor suitable for blocking database calls.
+     *
+     * @param virtualThreads {@code true} to start a virtual thread per task. Falls back to
+     *                       platform threads on JVMs older than Java 21.
+     * @param threads        the number of platform threads.
+     * @return a new executor.
+     */
+    public static ExecutorService newExecutor(boolean virtualThreads, int threads) {
+        if (virtualThreads) {
+            try {
+                // Looked up by reflection, so the application still compiles and runs on Java 17.
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads not available, using platform threads");
+            }
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "person-dao-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs several calls on the wrapped DAO as a single task.
+     *
+     * @param task the work to be done with the wrapped DAO.
+     * @param <T>  the type of the result.
+     * @return a future completed with the result of the task.
+     */
+    public <T> CompletableFuture<T> submit(DAOTask<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.run(personDAO);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    public CompletableFuture<Integer> addPerson(Person person) {
+        return submit(dao -> dao.addPerson(person));
+    }
+
+    public CompletableFuture<Integer> addPeople(Collection<Person> people) {
+        return submit(dao -> dao.addPeople(people));
+    }
+
+    public CompletableFuture<Person> getPerson(int id) {
+        return submit(dao -> dao.getPerson(id));
+    }
+
+    public CompletableFuture<List<Person>> getPeople() {
+        return submit(PersonDAO::getPeople);
+    }
+
+    /**
+     * Opens the stream asynchronously. Consuming the stream still blocks while rows
+     * are fetched, so it should be consumed away from the event dispatch thread too.
+     */
+    public CompletableFuture<Stream<Person>> streamPeople() {
+        return submit(PersonDAO::streamPeople);
+    }
+
+    public CompletableFuture<List<Person>> getPeopleAfter(int lastId, int limit) {
+        return submit(dao -> dao.getPeopleAfter(lastId, limit));
+    }
+
+    public CompletableFuture<List<Person>> getPeoplePage(int offset, int limit) {
+        return submit(dao -> dao.getPeoplePage(offset, limit));
+    }
+
+    public CompletableFuture<Integer> countPeople() {
+        return submit(PersonDAO::countPeople);
+    }
+
+    public CompletableFuture<List<Person>> findByName(String prefix, int limit) {
+        return submit(dao -> dao.findByName(prefix, limit));
+    }
+
+    public CompletableFuture<PeopleChanges> getChangedSince(long watermark) {
+        return submit(dao -> dao.getChangedSince(watermark));
+    }
+
+    public CompletableFuture<Integer> updatePerson(Person person) {
+        return submit(dao -> dao.updatePerson(person));
+    }
+
+    public CompletableFuture<Integer> updatePeople(Collection<Person> people) {
+        return submit(dao -> dao.updatePeople(people));
+    }
+
+    public CompletableFuture<UpsertResult> upsertPeople(Collection<Person> people) {
+        return submit(dao -> dao.upsertPeople(people));
+    }
+
+    public CompletableFuture<Integer> reserveIds(int count) {
+        return submit(dao -> dao.reserveIds(count));
+    }
+
+    public CompletableFuture<Integer> deletePerson(int id) {
+        return submit(dao -> dao.deletePerson(id));
+    }
+
+    public CompletableFuture<Integer> deleteAll() {
+        return submit(PersonDAO::deleteAll);
+    }
+
+    /**
+     * @return the wrapped {@code PersonDAO}.
+     */
+    public PersonDAO getPersonDAO() {
+        return personDAO;
+    }
+
+    /**
+     * Stops accepting new calls. Calls already submitted still complete.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Waits until every call submitted before {@code shutdown()} has completed.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit    the unit of the timeout.
+     * @return {@code false} if the timeout elapsed first.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
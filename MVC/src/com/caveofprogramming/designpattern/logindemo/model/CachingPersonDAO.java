@@ -0,0 +1,290 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * <p>The {@code CachingPersonDAO} class is a decorator that adds a read-through cache
+ * of people by id in front of any {@code PersonDAO}.
+ * {@code getPerson(id)} is answered from memory when the person is cached, and only
+ * goes to the wrapped DAO on a miss.</p>
+ * <ul>
+ *     <li>The cache holds at most {@code maxEntries} people and evicts the least
+ *     recently used one when it is full.</li>
+ *     <li>Entries can expire after a time to live, so changes made by other
+ *     applications are eventually seen.</li>
+ *     <li>Every write invalidates the entries it touches instead of caching the new
+ *     values, so of two concurrent updates the slower, older one can never be left in
+ *     the cache; the next {@code getPerson()} reads the row that won.</li>
+ * </ul>
+ * Hits, misses and evictions are counted, so the effect of the cache can be measured.
+ * Cached people are copied on the way in and out, so callers can change the beans they get.
+ */
+public class CachingPersonDAO implements PersonDAO {
+
+    private final PersonDAO personDAO;
+    private final long timeToLive;  // nanoseconds, 0 means entries never expire
+    private final Map<Integer, Entry> cache;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    // Incremented on every write, so a slow miss never caches a row changed meanwhile.
+    private long writes;
+
+    /**
+     * Wraps the given DAO with a cache whose entries never expire.
+     *
+     * @param personDAO  the DAO to be cached.
+     * @param maxEntries the maximum number of people held in the cache.
+     */
+    public CachingPersonDAO(PersonDAO personDAO, int maxEntries) {
+        this(personDAO, maxEntries, 0);
+    }
+
+    /**
+     * Wraps the given DAO with a cache.
+     *
+     * @param personDAO  the DAO to be cached.
+     * @param maxEntries the maximum number of people held in the cache.
+     * @param timeToLive milliseconds an entry stays valid, or 0 for no expiry.
+     */
+    public CachingPersonDAO(PersonDAO personDAO, int maxEntries, long timeToLive) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+
+        this.personDAO = personDAO;
+        this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+        // Access ordered, so the eldest entry is the least recently used one.
+        this.cache = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public int addPerson(Person person) throws SQLException {
+        int added = personDAO.addPerson(person);
+        if (added > 0 && person.getId() != 0)
+            invalidate(person.getId());
+        return added;
+    }
+
+    @Override
+    public int addPeople(Collection<Person> people) throws SQLException {
+        return personDAO.addPeople(people);
+    }
+
+    /**
+     * Returns the cached person with the given id, reading it from the wrapped
+     * DAO and caching it on a miss.
+     *
+     * @see PersonDAO#getPerson(int)
+     */
+    @Override
+    public Person getPerson(int id) throws SQLException {
+        long writesBeforeRead;
+        synchronized (this) {
+            Entry entry = cache.get(id);
+            if (entry != null && !entry.isExpired()) {
+                hits++;
+                return copy(entry.person);
+            }
+            if (entry != null)
+                cache.remove(id);
+            misses++;
+            writesBeforeRead = writes;
+        }
+
+        // The database is read outside the lock, so a slow miss does not block hits.
+        Person person = personDAO.getPerson(id);
+        if (person != null) {
+            synchronized (this) {
+                if (writes == writesBeforeRead)
+                    cache.put(id, new Entry(copy(person)));
+            }
+        }
+        return person;
+    }
+
+    @Override
+    public List<Person> getPeople() throws SQLException {
+        return personDAO.getPeople();
+    }
+
+    @Override
+    public Stream<Person> streamPeople() throws SQLException {
+        return personDAO.streamPeople();
+    }
+
+    @Override
+    public List<Person> getPeopleAfter(int lastId, int limit) throws SQLException {
+        return personDAO.getPeopleAfter(lastId, limit);
+    }
+
+    @Override
+    public List<Person> getPeoplePage(int offset, int limit) throws SQLException {
+        return personDAO.getPeoplePage(offset, limit);
+    }
+
+    @Override
+    public int countPeople() throws SQLException {
+        return personDAO.countPeople();
+    }
+
+    @Override
+    public List<Person> findByName(String prefix, int limit) throws SQLException {
+        return personDAO.findByName(prefix, limit);
+    }
+
+    /**
+     * Passes the call through, and drops the cached people that the result shows were
+     * changed or deleted, which also picks up the changes made by other applications
+     * before their entries expire. A snapshot does not say what changed, so it empties
+     * the whole cache.
+     */
+    @Override
+    public PeopleChanges getChangedSince(long watermark) throws SQLException {
+        PeopleChanges changes = personDAO.getChangedSince(watermark);
+        if (changes.isSnapshot()) {
+            invalidateAll();
+        } else if (changes.size() > 0) {
+            synchronized (this) {
+                writes++;
+                for (Person person : changes.getChanged())
+                    cache.remove(person.getId());
+                for (Integer id : changes.getDeletedIds())
+                    cache.remove(id);
+            }
+        }
+        return changes;
+    }
+
+    @Override
+    public int updatePerson(Person person) throws SQLException {
+        try {
+            return personDAO.updatePerson(person);
+        } finally {
+            invalidate(person.getId());
+        }
+    }
+
+    @Override
+    public int updatePeople(Collection<Person> people) throws SQLException {
+        try {
+            return personDAO.updatePeople(people);
+        } finally {
+            synchronized (this) {
+                writes++;
+                for (Person person : people)
+                    cache.remove(person.getId());
+            }
+        }
+    }
+
+    @Override
+    public UpsertResult upsertPeople(Collection<Person> people) throws SQLException {
+        try {
+            return personDAO.upsertPeople(people);
+        } finally {
+            synchronized (this) {
+                writes++;
+                for (Person person : people)
+                    cache.remove(person.getId());
+            }
+        }
+    }
+
+    @Override
+    public int reserveIds(int count) throws SQLException {
+        return personDAO.reserveIds(count);
+    }
+
+    @Override
+    public int deletePerson(int id) throws SQLException {
+        try {
+            return personDAO.deletePerson(id);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public int deleteAll() throws SQLException {
+        try {
+            return personDAO.deleteAll();
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Removes the person with the given id from the cache.
+     *
+     * @param id the id of the person.
+     */
+    public synchronized void invalidate(int id) {
+        writes++;
+        cache.remove(id);
+    }
+
+    /**
+     * Removes every person from the cache.
+     */
+    public synchronized void invalidateAll() {
+        writes++;
+        cache.clear();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int getSize() {
+        return cache.size();
+    }
+
+    /**
+     * @return the wrapped {@code PersonDAO}.
+     */
+    public PersonDAO getPersonDAO() {
+        return personDAO;
+    }
+
+    private static Person copy(Person person) {
+        return new Person(person.getId(), person.getName(), person.getPassword(), person.getVersion());
+    }
+
+    private class Entry {
+        private final Person person;
+        private final long expiresAt;
+
+        private Entry(Person person) {
+            this.person = person;
+            this.expiresAt = timeToLive > 0 ? System.nanoTime() + timeToLive : 0;
+        }
+
+        private boolean isExpired() {
+            return expiresAt != 0 && System.nanoTime() - expiresAt > 0;
+        }
+    }
+}
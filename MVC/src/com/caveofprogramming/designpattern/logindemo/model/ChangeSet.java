@@ -0,0 +1,217 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * <p>The changes taken from the {@code Model} by one save: the people to insert, the
+ * people to update and the ids of the people to delete. A {@code ChangeSet} is taken on
+ * the thread that owns the model with {@code Model.queueChanges()}, written to the
+ * database on a background thread with {@code write()}, and handed back to the model
+ * with {@code Model.finishSave()}, which puts back whatever was not written.</p>
+ * <p>The changes are written in chunks, so a long save can report its progress and be
+ * stopped between two chunks. Each chunk is still written in as few round trips as
+ * the {@code PersonDAO} allows.</p>
+ * The background thread writes copies of the people, taken with the change set, so the
+ * model can go on editing its own people meanwhile. {@code Model.finishSave()} gives them
+ * the ids and versions of their copies afterwards.
+ */
+public class ChangeSet {
+
+    // The people of the model, and the copies written in their place at the same index.
+    private final List<Person> added;
+    private final List<Person> updated;
+    private final List<Person> toAdd;
+    private final List<Person> toUpdate;
+    private final List<Integer> toDelete;
+
+    // How many of each list have been written; only the rest is put back after a failure.
+    // New and changed people are upserted together, new people first.
+    private volatile int upserted;
+    private volatile int deleted;
+    private volatile int written;
+    // People changed by someone else since they were read, left for the Model to resolve.
+    private final List<OptimisticLockException.Conflict> conflicts =
+            new CopyOnWriteArrayList<OptimisticLockException.Conflict>();
+    // Completed by Model.finishSave(); the next queued save waits for it.
+    private final CompletableFuture<Void> finished = new CompletableFuture<Void>();
+
+    ChangeSet(List<Person> added, List<Person> updated, List<Integer> toDelete) {
+        this.added = added;
+        this.updated = updated;
+        this.toAdd = copyOf(added);
+        this.toUpdate = copyOf(updated);
+        this.toDelete = toDelete;
+    }
+
+    private static List<Person> copyOf(List<Person> people) {
+        List<Person> copies = new ArrayList<Person>(people.size());
+        for (Person person : people)
+            copies.add(new Person(person.getId(), person.getName(), person.getPassword(), person.getVersion()));
+        return copies;
+    }
+
+    /**
+     * @return the number of people to be inserted, updated or deleted.
+     */
+    public int size() {
+        return toAdd.size() + toUpdate.size() + toDelete.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of people written so far.
+     */
+    public int getWritten() {
+        return written;
+    }
+
+    /**
+     * Writes the changes in one go.
+     *
+     * @param dao the DAO the changes are written through.
+     * @throws SQLException if a database access error occurs.
+     */
+    public void write(PersonDAO dao) throws SQLException {
+        write(dao, Integer.MAX_VALUE, written -> { }, () -> false);
+    }
+
+    /**
+     * Writes the changes in chunks: new and changed people together with
+     * {@code PersonDAO.upsertPeople()}, then deleted people. New people receive the id
+     * generated by the database, and a changed person whose row was deleted in the
+     * meantime is inserted again instead of being lost.
+     * <p>
+     * A person whose row was changed by someone else since it was read is not written.
+     * The other changes still are, and the conflicts are then thrown together as an
+     * {@code OptimisticLockException}; {@code Model.finishSave()} resolves them.
+     * </p>
+     *
+     * @param dao       the DAO the changes are written through.
+     * @param chunkSize the maximum number of people written per chunk.
+     * @param progress  called after each chunk with the number of people written so far.
+     * @param cancelled checked before each chunk; when it returns {@code true} the
+     *                  remaining changes are left unwritten.
+     * @return {@code true} if every change was written, {@code false} if cancelled.
+     * @throws OptimisticLockException if some people were changed by someone else.
+     * @throws SQLException if a database access error occurs.
+     */
+    public boolean write(PersonDAO dao, int chunkSize, IntConsumer progress, BooleanSupplier cancelled)
+            throws SQLException {
+        List<Person> toUpsert = new ArrayList<Person>(toAdd.size() + toUpdate.size());
+        toUpsert.addAll(toAdd);
+        toUpsert.addAll(toUpdate);
+
+        while (upserted < toUpsert.size()) {
+            if (cancelled.getAsBoolean())
+                return false;
+            // The DAO writes the generated ids back into the new people. Upserting is
+            // idempotent, so a chunk that failed half way can safely be written again.
+            int end = (int) Math.min((long) upserted + chunkSize, toUpsert.size());
+            try {
+                dao.upsertPeople(toUpsert.subList(upserted, end));
+            } catch (OptimisticLockException e) {
+                // Everybody else in the chunk was written.
+                conflicts.addAll(e.getConflicts());
+            }
+            upserted = end;
+            written = upserted;
+            progress.accept(written);
+        }
+
+        while (deleted < toDelete.size()) {
+            if (cancelled.getAsBoolean())
+                return false;
+            int end = (int) Math.min((long) deleted + chunkSize, toDelete.size());
+            for (; deleted < end; deleted++)
+                dao.deletePerson(toDelete.get(deleted));
+            written = toAdd.size() + toUpdate.size() + deleted;
+            progress.accept(written);
+        }
+
+        if (!conflicts.isEmpty())
+            throw new OptimisticLockException(conflicts);
+        return true;
+    }
+
+    CompletableFuture<Void> whenFinished() {
+        return finished;
+    }
+
+    void finish() {
+        finished.complete(null);
+    }
+
+    // The conflicts, with the people of the model in place of the copies written.
+    List<OptimisticLockException.Conflict> getConflicts() {
+        List<OptimisticLockException.Conflict> resolved =
+                new ArrayList<OptimisticLockException.Conflict>(conflicts.size());
+        for (OptimisticLockException.Conflict conflict : conflicts)
+            resolved.add(new OptimisticLockException.Conflict(originalOf(conflict.getMine()), conflict.getTheirs()));
+        return resolved;
+    }
+
+    private Person originalOf(Person copy) {
+        for (int i = 0; i < toAdd.size(); i++) {
+            if (toAdd.get(i) == copy)
+                return added.get(i);
+        }
+        for (int i = 0; i < toUpdate.size(); i++) {
+            if (toUpdate.get(i) == copy)
+                return updated.get(i);
+        }
+        return copy;
+    }
+
+    /*
+     * Gives the people of the model the ids and versions the DAO wrote into their copies,
+     * including those of a chunk that failed half way. Must be called on the thread that
+     * owns the model once the write is over. Returns the people edited in the meantime,
+     * whose edits were not written.
+     */
+    List<Person> copyBack() {
+        List<Person> edited = new ArrayList<Person>();
+        copyBack(added, toAdd, edited);
+        copyBack(updated, toUpdate, edited);
+        return edited;
+    }
+
+    private static void copyBack(List<Person> people, List<Person> copies, List<Person> edited) {
+        for (int i = 0; i < people.size(); i++) {
+            Person person = people.get(i);
+            Person copy = copies.get(i);
+            if (copy.getId() != 0)
+                person.setId(copy.getId());
+            person.setVersion(copy.getVersion());
+            if (!person.equals(copy))
+                edited.add(person);
+        }
+    }
+
+    List<Person> getAdded() {
+        return added;
+    }
+
+    // People of a chunk that failed may already have an id, assigned by the DAO before the
+    // failure. Upserting them again inserts or updates the row with that id, so no one is
+    // lost or written twice.
+    List<Person> getUnwrittenAdded() {
+        return added.subList(Math.min(upserted, added.size()), added.size());
+    }
+
+    List<Person> getUnwrittenUpdated() {
+        return updated.subList(Math.max(0, upserted - added.size()), updated.size());
+    }
+
+    List<Integer> getUnwrittenDeleted() {
+        return toDelete.subList(deleted, toDelete.size());
+    }
+}
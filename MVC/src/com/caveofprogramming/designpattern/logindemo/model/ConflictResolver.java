@@ -0,0 +1,32 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+/**
+ * <p>Decides what the {@code Model} keeps when a save finds that a person it changed
+ * was also changed by someone else; see {@code OptimisticLockException}.</p>
+ * The resolver returns the name and password to keep, as a {@code Person}. If they are
+ * the ones already in the database, the model simply shows them. Otherwise the model
+ * keeps them as an unsaved change, based on the current version of the row, so the
+ * next save writes them without a conflict.
+ */
+@FunctionalInterface
+public interface ConflictResolver {
+
+    /**
+     * Keeps the row in the database and drops the local change.
+     */
+    ConflictResolver KEEP_THEIRS = (mine, theirs) -> theirs;
+
+    /**
+     * Keeps the local change, overwriting the other one: last writer wins.
+     */
+    ConflictResolver KEEP_MINE = (mine, theirs) -> mine;
+
+    /**
+     * Called on the thread that owns the model. Neither argument may be changed.
+     *
+     * @param mine   the person as changed in the model.
+     * @param theirs the person as it is now in the database.
+     * @return the person holding the name and password to keep.
+     */
+    Person resolve(Person mine, Person theirs);
+}
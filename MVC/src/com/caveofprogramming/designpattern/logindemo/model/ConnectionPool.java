@@ -0,0 +1,560 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A bounded pool of JDBC connections. The {@code Database} singleton owns one pool
+ * and lends its connections to the DAOs, so several statements can run at the same
+ * time instead of queueing on a single shared {@code Connection}.</p>
+ * <p>Every connection handed out by {@link #borrow()} is a lightweight wrapper around
+ * a physical connection. Calling {@code close()} on the wrapper does not close the
+ * socket; it returns the physical connection to the pool so the next caller can reuse
+ * it. For that reason, borrowed connections must always be closed, ideally with a
+ * try-with-resources block.</p>
+ * The pool supports:
+ * <ul>
+ *     <li>Minimum and maximum size: at least {@code minSize} connections are kept open
+ *     and never more than {@code maxSize} are lent at once.</li>
+ *     <li>Borrow timeout: callers wait up to {@code borrowTimeout} milliseconds for a
+ *     free connection before a {@code SQLTimeoutException} is thrown.</li>
+ *     <li>Idle eviction: connections unused for longer than {@code idleTimeout}
+ *     milliseconds are closed, as long as the pool stays above {@code minSize}.</li>
+ *     <li>Validation on borrow: connections that have been idle for a while are checked
+ *     with {@code Connection.isValid()} before being lent, and replaced if broken.</li>
+ *     <li>Leak detection: connections held for longer than {@code leakDetectionThreshold}
+ *     milliseconds are reported, together with the code that borrowed them.</li>
+ *     <li>Statement caching: each physical connection keeps a {@code StatementCache} of up
+ *     to {@code statementCacheSize} prepared statements, so repeated SQL is parsed once
+ *     per connection rather than once per call.</li>
+ * </ul>
+ * The settings can only be changed while the pool is stopped.
+ */
+public class ConnectionPool {
+
+    // Connections used within this window are assumed to be alive and are not validated.
+    private static final long VALIDATION_BYPASS_WINDOW = 500;
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private int minSize = 1;
+    private int maxSize = 10;
+    private long borrowTimeout = 30_000;
+    private long idleTimeout = 600_000;
+    private int validationTimeout = 5;  // seconds, as required by Connection.isValid()
+    private long leakDetectionThreshold = 0;  // 0 disables leak detection
+    private long drainTimeout = 10_000;
+    private int statementCacheSize = 64;  // 0 disables statement caching
+
+    // Most recently returned connections are kept at the head and reused first.
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger total = new AtomicInteger();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    // A new semaphore per start(); each connection gives its permit back to the one it
+    // was borrowed from, so a connection returned after a restart cannot raise maxSize.
+    private volatile Semaphore permits;
+    private ScheduledExecutorService housekeeper;
+    private volatile boolean open;
+
+    /**
+     * Creates a stopped pool for the given JDBC url and credentials.
+     *
+     * @param url      JDBC url of the database.
+     * @param user     database user.
+     * @param password password of the database user.
+     */
+    public ConnectionPool(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    /**
+     * Opens the minimum number of connections and starts the background task that
+     * evicts idle connections and reports leaks. Calling it on a started pool does nothing.
+     *
+     * @throws SQLException if the initial connections cannot be opened.
+     */
+    public synchronized void start() throws SQLException {
+        if (open)
+            return;
+
+        permits = new Semaphore(maxSize, true);
+        open = true;
+
+        try {
+            fillToMinimum();
+        } catch (SQLException e) {
+            shutdown();
+            throw e;
+        }
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1_000, Math.min(idleTimeout, 30_000) / 2);
+        housekeeper.scheduleWithFixedDelay(this::houseKeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops lending connections and closes them all. Connections that are still borrowed
+     * are given up to {@code drainTimeout} milliseconds to be returned before they are
+     * closed underneath their borrowers. The pool is not locked while waiting, so the
+     * other methods, and {@code start()}, do not wait for the drain.
+     */
+    public void shutdown() {
+        Semaphore stopped;
+        long timeout;
+        synchronized (this) {
+            open = false;
+            stopped = permits;
+            permits = null;
+            timeout = drainTimeout;
+
+            if (housekeeper != null) {
+                housekeeper.shutdownNow();
+                housekeeper = null;
+            }
+
+            closeIdle();
+        }
+
+        long deadline = System.currentTimeMillis() + timeout;
+        while (isLent(stopped) && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // Only the connections of this start(); a restarted pool keeps its own.
+        for (PooledConnection pooled : borrowed) {
+            if (pooled.permits == stopped && borrowed.remove(pooled))
+                pooled.closePhysical();
+        }
+    }
+
+    /**
+     * Lends a connection from the pool, opening a new one if none is idle and the pool
+     * has not reached {@code maxSize}. The returned connection must be closed to give it
+     * back to the pool.
+     *
+     * @return a pooled connection.
+     * @throws SQLTimeoutException if no connection becomes free within {@code borrowTimeout}.
+     * @throws SQLException        if the pool is stopped or a new connection cannot be opened.
+     */
+    public Connection borrow() throws SQLException {
+        Semaphore current = permits;
+        if (!open || current == null)
+            throw new SQLException("Connection pool is not started");
+
+        try {
+            if (!current.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS))
+                throw new SQLTimeoutException(
+                        "Timed out after " + borrowTimeout + " ms waiting for a connection");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isAlive(pooled))
+                    return lend(pooled, current);
+                discard(pooled);
+            }
+            return lend(openConnection(), current);
+        } catch (SQLException | RuntimeException e) {
+            current.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of physical connections currently open.
+     */
+    public int getTotalConnections() {
+        return total.get();
+    }
+
+    /**
+     * @return the number of connections waiting in the pool to be borrowed.
+     */
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of connections currently lent to callers.
+     */
+    public int getActiveConnections() {
+        return borrowed.size();
+    }
+
+    /**
+     * @return the number of {@code prepareStatement()} calls served from a statement cache.
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    /**
+     * @return the number of {@code prepareStatement()} calls that had to prepare a new statement.
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    // getters and setters
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public synchronized void setMinSize(int minSize) {
+        checkStopped();
+        if (minSize < 0 || minSize > maxSize)
+            throw new IllegalArgumentException("minSize must be between 0 and maxSize");
+        this.minSize = minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        checkStopped();
+        if (maxSize < 1 || maxSize < minSize)
+            throw new IllegalArgumentException("maxSize must be at least 1 and not below minSize");
+        this.maxSize = maxSize;
+    }
+
+    public long getBorrowTimeout() {
+        return borrowTimeout;
+    }
+
+    public synchronized void setBorrowTimeout(long borrowTimeout) {
+        checkStopped();
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public synchronized void setIdleTimeout(long idleTimeout) {
+        checkStopped();
+        this.idleTimeout = idleTimeout;
+    }
+
+    public int getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    public synchronized void setValidationTimeout(int validationTimeout) {
+        checkStopped();
+        this.validationTimeout = validationTimeout;
+    }
+
+    public long getLeakDetectionThreshold() {
+        return leakDetectionThreshold;
+    }
+
+    public synchronized void setLeakDetectionThreshold(long leakDetectionThreshold) {
+        checkStopped();
+        this.leakDetectionThreshold = leakDetectionThreshold;
+    }
+
+    public long getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    public synchronized void setDrainTimeout(long drainTimeout) {
+        checkStopped();
+        this.drainTimeout = drainTimeout;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public synchronized void setStatementCacheSize(int statementCacheSize) {
+        checkStopped();
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    private void checkStopped() {
+        if (open)
+            throw new IllegalStateException("The pool must be stopped to change its settings");
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        total.incrementAndGet();
+        return openReserved();
+    }
+
+    // Opens a physical connection for a slot already counted in total.
+    private PooledConnection openReserved() throws SQLException {
+        try {
+            return new PooledConnection(DriverManager.getConnection(url, user, password));
+        } catch (SQLException | RuntimeException e) {
+            total.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private Connection lend(PooledConnection pooled, Semaphore from) {
+        pooled.permits = from;
+        pooled.borrowedAt = System.currentTimeMillis();
+        pooled.leakReported = false;
+        pooled.borrowSite = leakDetectionThreshold > 0
+                ? new Exception("Connection borrowed here")
+                : null;
+        borrowed.add(pooled);
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new ConnectionHandle(pooled));
+    }
+
+    // Called when a borrower closes its connection handle.
+    private void giveBack(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        pooled.lastUsed = System.currentTimeMillis();
+        Semaphore from = pooled.permits;
+
+        // A connection borrowed before a restart belongs to the stopped pool.
+        boolean reusable = open && from == permits;
+        if (reusable) {
+            pooled.statements.releaseAll();
+            try {
+                // Leave no half-finished transaction behind for the next borrower.
+                if (!pooled.conn.getAutoCommit()) {
+                    pooled.conn.rollback();
+                    pooled.conn.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                reusable = false;
+            }
+        }
+
+        if (reusable)
+            idle.offerFirst(pooled);
+        else
+            discard(pooled);
+
+        from.release();
+    }
+
+    // Whether connections borrowed from the given permits are still out.
+    private boolean isLent(Semaphore from) {
+        for (PooledConnection pooled : borrowed) {
+            if (pooled.permits == from)
+                return true;
+        }
+        return false;
+    }
+
+    private boolean isAlive(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_BYPASS_WINDOW)
+            return true;
+        try {
+            return pooled.conn.isValid(validationTimeout);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        pooled.closePhysical();
+    }
+
+    private void closeIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null)
+            discard(pooled);
+    }
+
+    // Each slot is reserved before its connection is opened, so start() and the
+    // housekeeper filling at the same time never open more than minSize.
+    private void fillToMinimum() throws SQLException {
+        while (open) {
+            int count = total.get();
+            if (count >= minSize)
+                return;
+            if (!total.compareAndSet(count, count + 1))
+                continue;
+
+            PooledConnection pooled = openReserved();
+            idle.offerLast(pooled);
+            // shutdown() may have emptied the idle connections while this one was opening.
+            if (!open && idle.remove(pooled))
+                discard(pooled);
+        }
+    }
+
+    // Periodic task: evicts idle connections, reports leaks and restores the minimum size.
+    private void houseKeep() {
+        long now = System.currentTimeMillis();
+
+        // The oldest idle connections sit at the tail of the deque, so start from there.
+        Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+        while (oldestFirst.hasNext() && total.get() > minSize) {
+            PooledConnection pooled = oldestFirst.next();
+            if (now - pooled.lastUsed > idleTimeout && idle.remove(pooled))
+                discard(pooled);
+        }
+
+        if (leakDetectionThreshold > 0) {
+            for (PooledConnection pooled : borrowed) {
+                if (!pooled.leakReported && now - pooled.borrowedAt > leakDetectionThreshold) {
+                    pooled.leakReported = true;
+                    System.out.println("Can't get back a connection held for "
+                            + (now - pooled.borrowedAt) + " ms, possible leak"
+                            + borrower(pooled.borrowSite));
+                }
+            }
+        }
+
+        try {
+            fillToMinimum();
+        } catch (SQLException e) {
+            System.out.println("Can't restore the minimum pool size: " + e.getMessage());
+        }
+    }
+
+    // Where the connection was borrowed: the first caller outside the pool and Database.
+    private static String borrower(Exception borrowSite) {
+        if (borrowSite == null)
+            return "";
+        for (StackTraceElement frame : borrowSite.getStackTrace()) {
+            String className = frame.getClassName();
+            if (!className.startsWith(ConnectionPool.class.getName())
+                    && !className.startsWith(Database.class.getName()))
+                return " (borrowed at " + frame + ")";
+        }
+        return "";
+    }
+
+    /**
+     * A physical connection together with the bookkeeping the pool needs.
+     */
+    private class PooledConnection {
+        private final Connection conn;
+        private final StatementCache statements;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile long borrowedAt;
+        private volatile boolean leakReported;
+        private volatile Exception borrowSite;
+        // The permits of the start() this connection was last borrowed under.
+        private volatile Semaphore permits;
+        private boolean closed;
+
+        private PooledConnection(Connection conn) {
+            this.conn = conn;
+            this.statements = new StatementCache(
+                    conn, statementCacheSize, statementCacheHits, statementCacheMisses);
+        }
+
+        private synchronized void closePhysical() {
+            if (closed)
+                return;
+            closed = true;
+            total.decrementAndGet();
+            statements.closeAll();
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                System.out.println("Can't close connection");
+            }
+        }
+    }
+
+    /**
+     * The handle a borrower sees. Every borrow gets a new handle, so a caller that keeps
+     * using a connection after closing it cannot interfere with the next borrower.
+     */
+    private class ConnectionHandle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private volatile boolean closed;
+
+        private ConnectionHandle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (!closed) {
+                            closed = true;
+                            giveBack(pooled);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.conn.isClosed();
+                case "prepareStatement":
+                    if (closed)
+                        throw new SQLException("Connection is closed");
+                    // Only the plain and the auto-generated keys variants are cached.
+                    if (args.length == 1)
+                        return pooled.statements.prepare(
+                                (Connection) proxy, (String) args[0], StatementCache.NO_KEYS_FLAG);
+                    if (args.length == 2 && args[1] instanceof Integer)
+                        return pooled.statements.prepare(
+                                (Connection) proxy, (String) args[0], (Integer) args[1]);
+                    return invokeOnConnection(method, args);
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + pooled.conn;
+                default:
+                    if (closed)
+                        throw new SQLException("Connection is closed");
+                    return invokeOnConnection(method, args);
+            }
+        }
+
+        private Object invokeOnConnection(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(pooled.conn, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.caveofprogramming.designpattern.logindemo.model;
 
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * The {@code DAOFactory} abstract class provide a structure for defining abstract
  * methods that must be implemented by its subclasses. This structure enables the
@@ -13,34 +18,203 @@ package com.caveofprogramming.designpattern.logindemo.model;
  * <p>The DAO pattern can be visualized as a pyramid with multiple layers. The DAOFactory
  * represents one of those layers, although many other layers are not present in
  * this application.</p>
+ *
+ * <p>Factories are kept in a registry: each one is created once and shared, and each
+ * factory creates its DAOs once and shares them too, so the DAOs must be thread-safe.
+ * Besides the built-in factories, any {@code DAOFactory} subclass listed in a
+ * {@code META-INF/services/com.caveofprogramming.designpattern.logindemo.model.DAOFactory}
+ * file on the classpath is discovered with {@code ServiceLoader}, so a new database can
+ * be plugged in without changing this class. Factories can also be added with
+ * {@code register()}.</p>
  */
 public abstract class DAOFactory {
 
     public static final int MYSQL = 0;
     public static final int ORACLE = 1;
+    public static final int EMBEDDED = 2;
+    // Only available once a ShardedDAOFactory has been registered.
+    public static final int SHARDED = 3;
+
+    // The size and time to live of the cache returned by getCachingPersonDAO().
+    public static final int CACHE_SIZE = 1000;
+    public static final long CACHE_TIME_TO_LIVE = 60000;
+
+    private static final ConcurrentMap<Integer, DAOFactory> factories =
+            new ConcurrentHashMap<Integer, DAOFactory>();
+    private static volatile boolean servicesLoaded;
+
+    private volatile PersonDAO personDAO;
+    private volatile LogDAO logDAO;
+    private volatile MeteredPersonDAO meteredPersonDAO;
+    private volatile CachingPersonDAO cachingPersonDAO;
+
+    /**
+     * @return the type this factory is registered under, such as {@code DAOFactory.MYSQL}.
+     */
+    public abstract int getType();
+
+    /**
+     * Creates the {@code PersonDAO} of this factory. It is called once, the first
+     * time {@code getPersonDAO()} is called.
+     */
+    protected abstract PersonDAO createPersonDAO();
+
+    /**
+     * Creates the {@code LogDAO} of this factory. It is called once, the first
+     * time {@code getLogDAO()} is called.
+     */
+    protected abstract LogDAO createLogDAO();
+
+    /**
+     * @return the {@code PersonDAO} shared by every caller of this factory.
+     */
+    public PersonDAO getPersonDAO() {
+        PersonDAO dao = personDAO;
+        if (dao == null) {
+            synchronized (this) {
+                dao = personDAO;
+                if (dao == null)
+                    personDAO = dao = createPersonDAO();
+            }
+        }
+        return dao;
+    }
+
+    /**
+     * @return the {@code LogDAO} shared by every caller of this factory.
+     */
+    public LogDAO getLogDAO() {
+        LogDAO dao = logDAO;
+        if (dao == null) {
+            synchronized (this) {
+                dao = logDAO;
+                if (dao == null)
+                    logDAO = dao = createLogDAO();
+            }
+        }
+        return dao;
+    }
+
+    /**
+     * Returns the {@code PersonDAO} of this factory wrapped in a {@code CachingPersonDAO},
+     * so point lookups by id are served from memory. This works with any factory, because
+     * the decorator only relies on the {@code PersonDAO} interface. The cache holds up to
+     * {@code CACHE_SIZE} people for {@code CACHE_TIME_TO_LIVE} milliseconds; it is created
+     * once and shared, so a write through one caller invalidates what the others see.
+     *
+     * @return the caching {@code PersonDAO} shared by every caller of this factory.
+     */
+    public CachingPersonDAO getCachingPersonDAO() {
+        CachingPersonDAO dao = cachingPersonDAO;
+        if (dao == null) {
+            synchronized (this) {
+                dao = cachingPersonDAO;
+                if (dao == null)
+                    cachingPersonDAO = dao = new CachingPersonDAO(getPersonDAO(), CACHE_SIZE, CACHE_TIME_TO_LIVE);
+            }
+        }
+        return dao;
+    }
 
-    public abstract PersonDAO getPersonDAO();
+    /**
+     * Returns the {@code PersonDAO} of this factory wrapped in a {@code MeteredPersonDAO},
+     * which records the latency, calls, errors and rows of every operation. The metered
+     * DAO is created once and shared, so all its callers add to the same metrics and
+     * {@code getSnapshot()} shows the whole application's load.
+     *
+     * @return the metered {@code PersonDAO} shared by every caller of this factory.
+     */
+    public MeteredPersonDAO getMeteredPersonDAO() {
+        MeteredPersonDAO dao = meteredPersonDAO;
+        if (dao == null) {
+            synchronized (this) {
+                dao = meteredPersonDAO;
+                if (dao == null)
+                    meteredPersonDAO = dao = new MeteredPersonDAO(getPersonDAO());
+            }
+        }
+        return dao;
+    }
+
+    /**
+     * Stops the background work of the DAOs created by this factory, after writing what
+     * they still hold, such as the entries waiting in the ring of a {@code MySQLLogDAO}.
+     * Must be called before {@code Database.disconnect()}, while they can still reach
+     * the database.
+     */
+    public void close() {
+        LogDAO dao = logDAO;
+        if (dao instanceof MySQLLogDAO)
+            ((MySQLLogDAO) dao).shutdown();
+    }
 
-    public abstract LogDAO getLogDAO();
+    /**
+     * Closes every factory returned by {@code getFactory()} so far; see {@code close()}.
+     */
+    public static void closeAll() {
+        for (DAOFactory factory : factories.values())
+            factory.close();
+    }
 
     /**
-     * This method returns one of two possible {@code DAOFactory} implementation
+     * This method returns one of the possible {@code DAOFactory} implementations
      * based on the specific database {@code type}. The returned DAOFactory is
      * abstracted behind this class, ensuring that the calling class does not need
      * to know the implementation details the selected DAOFactory.
+     * <p>
+     * The factory is created the first time its type is requested and the same
+     * instance is returned afterwards.
+     * </p>
      *
-     * @param type {@code DAOFactory.MYSQL} or {@code DAOFactory.ORACLE}
+     * @param type {@code DAOFactory.MYSQL}, {@code DAOFactory.ORACLE},
+     *             {@code DAOFactory.EMBEDDED} for the in-process {@code EmbeddedDatabase},
+     *             or the type of a registered or discovered factory
      * @return Either a specific {@code DAOFactory} implementation based on the given
      * database {@code type} or {@code null} if the {@code type} is unsupported.
      */
     public static DAOFactory getFactory(int type) {
+        DAOFactory factory = factories.get(type);
+        if (factory != null)
+            return factory;
+
         switch(type) {
             case MYSQL:
-                return new MySQLDAOFactory();
+                return factories.computeIfAbsent(type, key -> new MySQLDAOFactory());
             case ORACLE:
-                return new OracleDAOFactory();
+                return factories.computeIfAbsent(type, key -> new OracleDAOFactory());
+            case EMBEDDED:
+                return factories.computeIfAbsent(type, key -> new EmbeddedDAOFactory());
             default:
-                return null;
+                loadServices();
+                return factories.get(type);
+        }
+    }
+
+    /**
+     * Registers a factory under its {@code getType()}, replacing any factory
+     * registered with the same type.
+     *
+     * @param factory the factory to register.
+     */
+    public static void register(DAOFactory factory) {
+        factories.put(factory.getType(), factory);
+    }
+
+    // Looks up the factories provided through ServiceLoader, only once.
+    private static void loadServices() {
+        if (servicesLoaded)
+            return;
+
+        synchronized (DAOFactory.class) {
+            if (servicesLoaded)
+                return;
+            try {
+                for (DAOFactory factory : ServiceLoader.load(DAOFactory.class))
+                    factories.putIfAbsent(factory.getType(), factory);
+            } catch (ServiceConfigurationError e) {
+                System.out.println("Can't load DAO factories: " + e.getMessage());
+            }
+            servicesLoaded = true;
         }
     }
 }
@@ -1,8 +1,18 @@
 package com.caveofprogramming.designpattern.logindemo.model;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>This class represents the database of our application and uses the Singleton pattern
@@ -22,6 +32,21 @@ import java.sql.SQLException;
  * <p>A classic use case for the Singleton pattern is a Database class. This ensures that
  * only one instance of the database connection exists, avoiding potential issues with
  * multiple connections being created and managed improperly.</p>
+ *
+ * <p>Here the single instance owns a {@code ConnectionPool} instead of a single
+ * {@code Connection}. The Singleton still guarantees that connections are created and
+ * managed in one place, while the pool allows several DAO calls to run at once.</p>
+ *
+ * <p>Besides the primary database, which receives every write, the instance can own a
+ * pool per read replica. {@code getReadConnection()} spreads the reads over the replicas,
+ * round-robin or to the replica that answers fastest, so read-heavy GUI traffic does not
+ * compete with saves. Replicas lag behind the primary, so for {@code stickyWindow}
+ * milliseconds after a write every read goes to the primary, and users see their own
+ * changes. The databases are taken from the {@code logindemo.db.primary} and
+ * {@code logindemo.db.replicas} system properties, as {@code host:port} and a
+ * comma-separated list of {@code host:port}, which lets tests run against several local
+ * stand-in databases. {@code logindemo.db.balancing} and {@code logindemo.db.stickyWindow}
+ * set the initial balancing and sticky window.</p>
  */
 public class Database {
 
@@ -29,13 +54,62 @@ public class Database {
     // This is the only statement that instantiates the database
     private final static Database instance = new Database();
 
-    private Connection conn;
+    private static final String USER = "squiffy";
+    private static final String PASSWORD = "LetMeIn01";
+
+    /**
+     * How reads are spread over the replicas.
+     */
+    public enum Balancing {
+        /** Each read goes to the next replica in turn. */
+        ROUND_ROBIN,
+        /** Each read goes to the replica with the lowest recent latency, given its load. */
+        LEAST_LATENCY
+    }
+
+    private final ConnectionPool pool;
+    private final List<Replica> replicas = new CopyOnWriteArrayList<Replica>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private volatile Balancing balancing = balancingProperty();
+    private volatile long stickyWindow = Long.getLong("logindemo.db.stickyWindow", 2000);
+    // System.nanoTime() of the last write, recorded by markWrite().
+    private volatile long lastWrite = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+    // Number of readFromPrimary() calls running; while there is one, every read goes to the primary.
+    private final AtomicInteger primaryReaders = new AtomicInteger();
 
     /**
      * When a constructor is private, the new keyword cannot be used by external classes
      * to create instances.
      */
     private Database() {
+        pool = new ConnectionPool(url(System.getProperty("logindemo.db.primary", "localhost:3306")),
+                USER, PASSWORD);
+
+        String replicaHosts = System.getProperty("logindemo.db.replicas", "");
+        for (String host : replicaHosts.split(",")) {
+            if (!host.isBlank())
+                replicas.add(new Replica(new ConnectionPool(url(host.trim()), USER, PASSWORD)));
+        }
+    }
+
+    // Reads logindemo.db.balancing. This runs while the singleton is created, so a wrong
+    // value must not throw: that would leave the Database class unusable.
+    private static Balancing balancingProperty() {
+        String value = System.getProperty("logindemo.db.balancing", "ROUND_ROBIN");
+        try {
+            return Balancing.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Can't use logindemo.db.balancing=" + value + ", using ROUND_ROBIN");
+            return Balancing.ROUND_ROBIN;
+        }
+    }
+
+    // rewriteBatchedStatements lets the driver send a JDBC batch as multi-row statements,
+    // and useCursorFetch makes statements with a fetch size read through a server-side cursor.
+    // The schema can be changed with logindemo.db.schema, for example for the benchmarks.
+    private static String url(String host) {
+        return String.format("jdbc:mysql://%s/%s?rewriteBatchedStatements=true&useCursorFetch=true",
+                host, System.getProperty("logindemo.db.schema", "patterns"));
     }
 
     /**
@@ -63,18 +137,145 @@ public class Database {
      ///// You can add any methods you need to your singleton class. /////
 
     /**
-     * Returns the database connection.
+     * Borrows a connection to the primary database from the pool. The connection must be
+     * closed once the caller is done with it, which returns it to the pool rather than
+     * closing it. This is the connection to use for writes, and for the reads they depend
+     * on; the DAOs call {@code markWrite()} once a write is committed.
+     *
      * @return an object containing a connection to the database.
+     * @throws SQLException if the database is not connected, or no connection
+     *                      becomes available within the pool's borrow timeout.
+     */
+    public Connection getConnection() throws SQLException {
+        return pool.borrow();
+    }
+
+    /**
+     * Records that a write was made on the primary database, which starts the sticky
+     * window of {@code getReadConnection()}. Only writes call it, so reads made on a
+     * primary connection, such as a conflict check, leave the replicas in use.
+     */
+    public void markWrite() {
+        lastWrite = System.nanoTime();
+    }
+
+    /**
+     * Borrows a connection for reading only. It comes from a replica chosen by the
+     * {@code Balancing}, unless there is no replica or a write was made less than
+     * {@code stickyWindow} milliseconds ago, in which case it comes from the primary.
+     * A replica that cannot lend a connection is skipped in favour of the primary, and
+     * left out until it has been down for a while; then a single read tries it again.
+     * Like {@code getConnection()}, the connection must be closed.
+     *
+     * @return a connection to a replica or to the primary database.
+     * @throws SQLException if no connection becomes available.
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (primaryReaders.get() > 0
+                || System.nanoTime() - lastWrite < TimeUnit.MILLISECONDS.toNanos(stickyWindow))
+            return pool.borrow();
+
+        Replica replica = chooseReplica();
+        if (replica == null)
+            return pool.borrow();
+
+        try {
+            replica.inFlight.incrementAndGet();
+            long start = System.nanoTime();
+            Connection conn = replica.pool.borrow();
+            replica.borrowed(System.nanoTime() - start);
+            return onClose(conn, replica.inFlight::decrementAndGet);
+        } catch (SQLException e) {
+            replica.inFlight.decrementAndGet();
+            replica.failed(e);
+            return pool.borrow();
+        }
+    }
+
+    /**
+     * Runs several reads that must see the database at the same point or later, such as a
+     * watermark and the rows loaded after it: each read could otherwise go to another
+     * replica, lagging by its own amount, and miss rows the previous one saw. While the
+     * reads run, {@code getReadConnection()} returns primary connections to every caller.
+     *
+     * @param reads the reads to run on the primary database.
+     * @param <T>   the type of the result.
+     * @return the result of {@code reads}.
+     * @throws Exception if {@code reads} throws.
+     */
+    public <T> T readFromPrimary(Callable<T> reads) throws Exception {
+        primaryReaders.incrementAndGet();
+        try {
+            return reads.call();
+        } finally {
+            primaryReaders.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the connection pool, so its size, timeouts and leak detection can
+     * be configured before {@code connect()} is called.
+     *
+     * @return the connection pool of the primary database.
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Adds a read replica. Like the pool settings, replicas can only be added while
+     * the database is disconnected.
+     *
+     * @param url      JDBC url of the replica.
+     * @param user     database user.
+     * @param password password of the database user.
+     * @return the connection pool of the replica, so it can be configured.
+     */
+    public ConnectionPool addReplica(String url, String user, String password) {
+        if (pool.isOpen())
+            throw new IllegalStateException("Replicas can only be added while disconnected");
+        ConnectionPool replicaPool = new ConnectionPool(url, user, password);
+        replicas.add(new Replica(replicaPool));
+        return replicaPool;
+    }
+
+    /**
+     * @return the connection pools of the read replicas.
      */
-    public Connection getConnection() {
-        return conn;
+    public List<ConnectionPool> getReplicas() {
+        List<ConnectionPool> pools = new ArrayList<ConnectionPool>(replicas.size());
+        for (Replica replica : replicas)
+            pools.add(replica.pool);
+        return Collections.unmodifiableList(pools);
+    }
+
+    public Balancing getBalancing() {
+        return balancing;
+    }
+
+    public void setBalancing(Balancing balancing) {
+        this.balancing = balancing;
+    }
+
+    public long getStickyWindow() {
+        return stickyWindow;
     }
 
     /**
-     * Connects to the database.
+     * @param stickyWindow how many milliseconds after a write reads still go to the
+     *                     primary; it should exceed the usual replication lag.
+     */
+    public void setStickyWindow(long stickyWindow) {
+        if (stickyWindow < 0)
+            throw new IllegalArgumentException("stickyWindow must not be negative");
+        this.stickyWindow = stickyWindow;
+    }
+
+    /**
+     * Connects to the database by starting the connection pool.
      */
     public void connect() throws Exception {
-        if (conn != null)
+        if (pool.isOpen())
             return;
 
         try {
@@ -84,23 +285,134 @@ public class Database {
             throw new Exception("Driver not found");
         }
 
-        String url = String.format("jdbc:mysql://localhost:%d/patterns", 3306);
-
-        conn = DriverManager.getConnection(url, "squiffy", "LetMeIn01");
+        pool.start();
+        // The primary is enough to run; a replica that is down is only left out.
+        for (Replica replica : replicas) {
+            try {
+                replica.pool.start();
+            } catch (SQLException e) {
+                System.out.println("Can't connect to a replica: " + e.getMessage());
+            }
+        }
     }
 
     /**
-     * Disconnects from the database
+     * Disconnects from the database, draining and closing every pooled connection.
      */
     public void disconnect() {
-        if (conn != null) {
-            try {
-                conn.close();
-            } catch (SQLException e) {
-                System.out.println("Can't close connection");
+        pool.shutdown();
+        for (Replica replica : replicas)
+            replica.pool.shutdown();
+    }
+
+    // Returns null when no replica is connected, or when the one chosen is down and
+    // another read is already trying it again.
+    private Replica chooseReplica() {
+        long now = System.nanoTime();
+        List<Replica> open = new ArrayList<Replica>(replicas.size());
+        for (Replica replica : replicas) {
+            if (replica.pool.isOpen() && replica.isUsable(now))
+                open.add(replica);
+        }
+        if (open.isEmpty())
+            return null;
+
+        Replica chosen;
+        if (balancing == Balancing.ROUND_ROBIN) {
+            chosen = open.get(Math.floorMod(nextReplica.getAndIncrement(), open.size()));
+        } else {
+            // The latency is scaled by the reads in flight, so a fast replica is not flooded.
+            chosen = null;
+            double bestCost = Double.MAX_VALUE;
+            for (Replica replica : open) {
+                double cost = replica.latency * (replica.inFlight.get() + 1);
+                if (cost < bestCost) {
+                    chosen = replica;
+                    bestCost = cost;
+                }
+            }
+        }
+        return chosen.claim() ? chosen : null;
+    }
+
+    // Wraps a borrowed connection so that the action runs when it is first closed.
+    private static Connection onClose(Connection conn, Runnable action) {
+        AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(
+                Database.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    try {
+                        return method.invoke(conn, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        if (method.getName().equals("close") && closed.compareAndSet(false, true))
+                            action.run();
+                    }
+                });
+    }
+
+    /**
+     * The pool of a read replica, its recent latency and whether it is down.
+     */
+    private static class Replica {
+        // Weight of the newest sample in the moving average.
+        private static final double SMOOTHING = 0.2;
+        // How long a replica that is down is left out, doubled by every failed retry.
+        private static final long MIN_BACKOFF = TimeUnit.SECONDS.toNanos(1);
+        private static final long MAX_BACKOFF = TimeUnit.SECONDS.toNanos(30);
+
+        private final ConnectionPool pool;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        // Set while borrowing from the replica fails. Once retryAt has passed, the read that
+        // sets probing tries it again, while the others keep reading from the primary.
+        private final AtomicBoolean down = new AtomicBoolean();
+        private final AtomicBoolean probing = new AtomicBoolean();
+        private volatile long backoff = MIN_BACKOFF;
+        private volatile long retryAt;
+        // Exponentially weighted moving average of how long borrowing a connection took, in
+        // nanoseconds. A slow replica holds its connections longer, so its borrows wait.
+        private volatile double latency;
+
+        private Replica(ConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        private boolean isUsable(long now) {
+            return !down.get() || (now - retryAt >= 0 && !probing.get());
+        }
+
+        // Lets a read go to the replica: any read while it is up, a single one once it is
+        // due to be tried again.
+        private boolean claim() {
+            return !down.get() || probing.compareAndSet(false, true);
+        }
+
+        private void borrowed(long nanos) {
+            if (down.compareAndSet(true, false)) {
+                System.out.println("A replica is back, reading from it again");
+                backoff = MIN_BACKOFF;
+                probing.set(false);
+            }
+            // Racy updates only lose a sample, which the average does not miss.
+            latency = latency == 0 ? nanos : latency + SMOOTHING * (nanos - latency);
+        }
+
+        private void failed(SQLException e) {
+            if (down.compareAndSet(false, true)) {
+                // Reported once per outage, not on every read.
+                System.out.println("Can't read from a replica, using the primary: " + e.getMessage());
+                backoff = MIN_BACKOFF;
+                retryAt = System.nanoTime() + backoff;
+            } else if (probing.get()) {
+                // The retry failed too. Other reads failing meanwhile were started before
+                // the replica was found down, so they do not lengthen the wait.
+                backoff = Math.min(backoff * 2, MAX_BACKOFF);
+                retryAt = System.nanoTime() + backoff;
+                probing.set(false);
             }
         }
-        conn = null;
     }
     /* **************************************************************************
      * Two typical examples of using these methods are:
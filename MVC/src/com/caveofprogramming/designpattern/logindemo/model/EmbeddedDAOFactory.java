@@ -0,0 +1,56 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+/**
+ * The {@code EmbeddedDAOFactory} class facilitates the creation of DAOs that
+ * store their data in an {@code EmbeddedDatabase}, inside the application's own
+ * process, so no database server is needed.
+ */
+public class EmbeddedDAOFactory extends DAOFactory {
+
+    private final EmbeddedDatabase database;
+
+    /**
+     * Creates a factory whose DAOs use the shared {@code EmbeddedDatabase}.
+     */
+    public EmbeddedDAOFactory() {
+        this(EmbeddedDatabase.getInstance());
+    }
+
+    /**
+     * Creates a factory whose DAOs use the given {@code EmbeddedDatabase}.
+     *
+     * @param database the embedded database the DAOs read and write.
+     */
+    public EmbeddedDAOFactory(EmbeddedDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public int getType() {
+        return EMBEDDED;
+    }
+
+    /**
+     * Creates a new instance of {@code EmbeddedPersonDAO} and returns
+     * it as an {@code PersonDAO}.
+     *
+     * @return new instance {@code EmbeddedPersonDAO} as a {@code PersonDAO}.
+     * @see DAOFactory#getPersonDAO()
+     */
+    @Override
+    protected PersonDAO createPersonDAO() {
+        return new EmbeddedPersonDAO(database);
+    }
+
+    /**
+     * Creates a new instance of {@code EmbeddedLogDAO} and returns
+     * it as an {@code LogDAO}.
+     *
+     * @return new instance {@code EmbeddedLogDAO} as a {@code LogDAO}.
+     * @see DAOFactory#getLogDAO()
+     */
+    @Override
+    protected LogDAO createLogDAO() {
+        return new EmbeddedLogDAO(database);
+    }
+}
@@ -0,0 +1,430 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>An in-process storage engine that keeps the {@code people} and {@code log} tables
+ * in memory. It lets the application, its tests and nodes without a database server
+ * run the DAOs at memory speed.</p>
+ * The {@code people} table has:
+ * <ul>
+ *     <li>A primary key hash index on {@code id}, for constant time point lookups.</li>
+ *     <li>The rows ordered by {@code id}, for full scans and keyset pagination.</li>
+ *     <li>A secondary sorted index on {@code name}, for prefix searches.</li>
+ *     <li>A change log ordered by sequence number, for {@code selectChangedSince()}.</li>
+ * </ul>
+ * <p>Every table is protected by a read/write lock, so any number of readers can run at
+ * the same time while writers get exclusive access. Rows are copied on the way in and on
+ * the way out, so callers can freely change the {@code Person} beans they hold.</p>
+ * Like {@code Database}, there is one shared instance returned by {@code getInstance()}.
+ * Unlike {@code Database}, the constructor is public, so tests can create several
+ * independent databases.
+ */
+public class EmbeddedDatabase {
+
+    private static final EmbeddedDatabase instance = new EmbeddedDatabase();
+
+    /**
+     * Returned by {@code updatePerson()} and {@code upsertPerson()} when the row has
+     * another version than the person: someone else changed it since it was read.
+     */
+    public static final int CONFLICT = -1;
+
+    private static final Comparator<Person> BY_NAME = Comparator
+            .comparing(Person::getName, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparingInt(Person::getId);
+
+    // people table
+    private final ReadWriteLock peopleLock = new ReentrantReadWriteLock();
+    private final Map<Integer, Person> peopleById = new HashMap<Integer, Person>();
+    private final NavigableMap<Integer, Person> peopleInIdOrder = new TreeMap<Integer, Person>();
+    private final TreeSet<Person> peopleByName = new TreeSet<Person>(BY_NAME);
+    private int lastPersonId;
+
+    // Every insert, update and delete takes the next sequence number. The change log
+    // keeps the latest number of each row, the tombstones the number of each delete.
+    private long sequence;
+    private final Map<Integer, Long> seqById = new HashMap<Integer, Long>();
+    private final NavigableMap<Long, Integer> changeLog = new TreeMap<Long, Integer>();
+    private final Map<Integer, Long> tombstoneSeqById = new HashMap<Integer, Long>();
+    private final NavigableMap<Long, Integer> tombstones = new TreeMap<Long, Integer>();
+
+    // log table
+    private final ReadWriteLock logLock = new ReentrantReadWriteLock();
+    private final List<Log> log = new ArrayList<Log>();
+
+    /**
+     * @return the shared embedded database used by {@code DAOFactory.EMBEDDED}.
+     */
+    public static EmbeddedDatabase getInstance() {
+        return instance;
+    }
+
+    /**
+     * Inserts a copy of the given person with a new autoincrement id, and writes
+     * that id back into {@code person}.
+     *
+     * @param person the person to insert.
+     * @return the id of the new row.
+     */
+    public int insertPerson(Person person) {
+        peopleLock.writeLock().lock();
+        try {
+            Person row = copy(person);
+            row.setId(++lastPersonId);
+            row.setVersion(0);
+            index(row);
+            logChange(row.getId());
+            person.setId(row.getId());
+            person.setVersion(0);
+            return row.getId();
+        } finally {
+            peopleLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id the id of the person.
+     * @return a copy of the person with the given id, or {@code null} if there is none.
+     */
+    public Person selectPerson(int id) {
+        peopleLock.readLock().lock();
+        try {
+            return copy(peopleById.get(id));
+        } finally {
+            peopleLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param lastId only people with a greater id are returned.
+     * @param limit  the maximum number of people to return.
+     * @return copies of up to {@code limit} people ordered by id.
+     */
+    public List<Person> selectPeopleAfter(int lastId, int limit) {
+        peopleLock.readLock().lock();
+        try {
+            List<Person> people = new ArrayList<Person>(Math.min(limit, peopleById.size()));
+            for (Person row : peopleInIdOrder.tailMap(lastId, false).values()) {
+                if (people.size() >= limit)
+                    break;
+                people.add(copy(row));
+            }
+            return people;
+        } finally {
+            peopleLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param offset the number of rows to skip, in id order.
+     * @param limit  the maximum number of people to return.
+     * @return copies of up to {@code limit} people ordered by id.
+     */
+    public List<Person> selectPeoplePage(int offset, int limit) {
+        peopleLock.readLock().lock();
+        try {
+            List<Person> people = new ArrayList<Person>(Math.max(0, Math.min(limit, peopleById.size() - offset)));
+            int position = 0;
+            for (Person row : peopleInIdOrder.values()) {
+                if (people.size() >= limit)
+                    break;
+                if (position++ >= offset)
+                    people.add(copy(row));
+            }
+            return people;
+        } finally {
+            peopleLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param prefix the beginning of the name.
+     * @param limit  the maximum number of people to return.
+     * @return copies of up to {@code limit} people whose name starts with
+     * {@code prefix}, ordered by name and id.
+     */
+    public List<Person> selectPeopleByName(String prefix, int limit) {
+        peopleLock.readLock().lock();
+        try {
+            List<Person> people = new ArrayList<Person>();
+            Person from = new Person(Integer.MIN_VALUE, prefix, null);
+            for (Person row : peopleByName.tailSet(from, true)) {
+                if (people.size() >= limit || row.getName() == null || !row.getName().startsWith(prefix))
+                    break;
+                people.add(copy(row));
+            }
+            return people;
+        } finally {
+            peopleLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the name and password of the row with the same id as {@code person}, if
+     * the row still has the version of {@code person}. The version is incremented, in
+     * the row and in {@code person}.
+     *
+     * @param person the new values of the row.
+     * @return 1 if the row was updated, 0 if there is no row with that id, or
+     * {@code CONFLICT} if the row has another version.
+     */
+    public int updatePerson(Person person) {
+        peopleLock.writeLock().lock();
+        try {
+            Person row = peopleById.get(person.getId());
+            if (row == null)
+                return 0;
+            if (row.getVersion() != person.getVersion())
+                return CONFLICT;
+
+            replace(row, person);
+            return 1;
+        } finally {
+            peopleLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts a copy of the given person, or replaces the row with the same id like
+     * {@code updatePerson()}. A person without an id gets a new autoincrement id, written
+     * back into {@code person}; a person with an id whose row does not exist is inserted
+     * with that id and version.
+     *
+     * @param person the person to write.
+     * @return 1 if a row was inserted, 0 if one was updated, or {@code CONFLICT} if the
+     * row has another version.
+     */
+    public int upsertPerson(Person person) {
+        peopleLock.writeLock().lock();
+        try {
+            if (person.getId() == 0) {
+                insertPerson(person);
+                return 1;
+            }
+
+            Person row = peopleById.get(person.getId());
+            if (row == null) {
+                index(copy(person));
+                logChange(person.getId());
+                // Like MySQL, an explicit id moves the autoincrement counter past it.
+                lastPersonId = Math.max(lastPersonId, person.getId());
+                return 1;
+            }
+            if (row.getVersion() != person.getVersion())
+                return CONFLICT;
+
+            replace(row, person);
+            return 0;
+        } finally {
+            peopleLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the autoincrement counter past a block of ids, so neither inserts nor other
+     * reservations are given them.
+     *
+     * @param count the number of ids to reserve.
+     * @return the first id of the block.
+     */
+    public int reserveIds(int count) {
+        peopleLock.writeLock().lock();
+        try {
+            int first = lastPersonId + 1;
+            lastPersonId += count;
+            return first;
+        } finally {
+            peopleLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id the id of the person to delete.
+     * @return 1 if the row was deleted, 0 if there is no row with that id.
+     */
+    public int deletePerson(int id) {
+        peopleLock.writeLock().lock();
+        try {
+            Person row = peopleById.get(id);
+            if (row == null)
+                return 0;
+
+            unindex(row);
+            logDelete(id);
+            return 1;
+        } finally {
+            peopleLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes every person. Like a SQL {@code DELETE}, the autoincrement id is not reset.
+     *
+     * @return the number of people deleted.
+     */
+    public int deleteAllPeople() {
+        peopleLock.writeLock().lock();
+        try {
+            int deleted = peopleById.size();
+            for (Integer id : peopleInIdOrder.keySet())
+                logDelete(id);
+            peopleById.clear();
+            peopleInIdOrder.clear();
+            peopleByName.clear();
+            return deleted;
+        } finally {
+            peopleLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads what changed in the {@code people} table after a sequence number. The rows
+     * and tombstones are read under one lock, so they are consistent with each other and
+     * with the returned watermark.
+     *
+     * @param watermark the sequence number returned by the previous call, or 0 for a
+     *                  snapshot of the whole table.
+     * @return copies of the people inserted or updated after {@code watermark}, ordered
+     * by sequence number, and the ids of the people deleted after it.
+     */
+    public PeopleChanges selectChangedSince(long watermark) {
+        peopleLock.readLock().lock();
+        try {
+            List<Person> changed = new ArrayList<Person>();
+            List<Integer> deletedIds = new ArrayList<Integer>();
+            // A watermark ahead of the sequence comes from another database, whose changes
+            // after it cannot be told apart; Long.MAX_VALUE only asks for the sequence.
+            if (watermark == 0 || (watermark > sequence && watermark != Long.MAX_VALUE)) {
+                for (Person row : peopleInIdOrder.values())
+                    changed.add(copy(row));
+                return new PeopleChanges(changed, deletedIds, sequence, true);
+            }
+
+            for (Integer id : changeLog.tailMap(watermark, false).values())
+                changed.add(copy(peopleById.get(id)));
+            deletedIds.addAll(tombstones.tailMap(watermark, false).values());
+            return new PeopleChanges(changed, deletedIds, sequence, false);
+        } finally {
+            peopleLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of rows in the {@code people} table.
+     */
+    public int countPeople() {
+        peopleLock.readLock().lock();
+        try {
+            return peopleById.size();
+        } finally {
+            peopleLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends an entry to the {@code log} table, timestamped with the current time.
+     *
+     * @param message the message to log.
+     */
+    public void insertLog(String message) {
+        logLock.writeLock().lock();
+        try {
+            Log entry = new Log();
+            entry.setId(log.size() + 1);
+            entry.setDate(new Date());
+            entry.setMessage(message);
+            log.add(entry);
+        } finally {
+            logLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param number the maximum number of entries to return.
+     * @return the latest {@code number} log entries, newest first.
+     */
+    public List<Log> selectLatestLogs(int number) {
+        logLock.readLock().lock();
+        try {
+            List<Log> entries = new ArrayList<Log>(Math.min(number, log.size()));
+            for (int i = log.size() - 1; i >= 0 && entries.size() < number; i--)
+                entries.add(copy(log.get(i)));
+            return entries;
+        } finally {
+            logLock.readLock().unlock();
+        }
+    }
+
+    // The following methods must be called while holding the people write lock.
+
+    private void index(Person row) {
+        peopleById.put(row.getId(), row);
+        peopleInIdOrder.put(row.getId(), row);
+        peopleByName.add(row);
+    }
+
+    private void unindex(Person row) {
+        peopleById.remove(row.getId());
+        peopleInIdOrder.remove(row.getId());
+        peopleByName.remove(row);
+    }
+
+    // Replaces a row with the values of the person and the next version.
+    private void replace(Person row, Person person) {
+        unindex(row);
+        Person updated = copy(person);
+        updated.setVersion(row.getVersion() + 1);
+        index(updated);
+        logChange(updated.getId());
+        person.setVersion(updated.getVersion());
+    }
+
+    // Moves the row to the end of the change log. A tombstone from an earlier delete of
+    // the same id is dropped, as the row is back.
+    private void logChange(int id) {
+        Long previous = seqById.put(id, ++sequence);
+        if (previous != null)
+            changeLog.remove(previous);
+        changeLog.put(sequence, id);
+
+        Long tombstone = tombstoneSeqById.remove(id);
+        if (tombstone != null)
+            tombstones.remove(tombstone);
+    }
+
+    private void logDelete(int id) {
+        Long previous = seqById.remove(id);
+        if (previous != null)
+            changeLog.remove(previous);
+
+        Long tombstone = tombstoneSeqById.put(id, ++sequence);
+        if (tombstone != null)
+            tombstones.remove(tombstone);
+        tombstones.put(sequence, id);
+    }
+
+    private static Person copy(Person person) {
+        if (person == null)
+            return null;
+        return new Person(person.getId(), person.getName(), person.getPassword(), person.getVersion());
+    }
+
+    private static Log copy(Log entry) {
+        Log copy = new Log();
+        copy.setId(entry.getId());
+        copy.setDate(entry.getDate());
+        copy.setMessage(entry.getMessage());
+        return copy;
+    }
+}
@@ -0,0 +1,34 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.util.List;
+
+/**
+ * Class that implements the {@code LogDAO} interface on top of the {@code log} table
+ * of an {@code EmbeddedDatabase}, using the {@code Log} bean to handle the data.
+ */
+public class EmbeddedLogDAO implements LogDAO {
+
+    private final EmbeddedDatabase database;
+
+    public EmbeddedLogDAO(EmbeddedDatabase database) {
+        this.database = database;
+    }
+
+    /*
+     *(non-Javadoc)
+     * @see LogDAO#addEntry(String)
+     */
+    @Override
+    public void addEntry(String message) {
+        database.insertLog(message);
+    }
+
+    /*
+     *(non-Javadoc)
+     * @see LogDAO#getEntries(int)
+     */
+    @Override
+    public List<Log> getEntries(int number) {
+        return database.selectLatestLogs(number);
+    }
+}
@@ -0,0 +1,182 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>This class implements the {@code PersonDAO} interface on top of the {@code people}
+ * table of an {@code EmbeddedDatabase}. Because the data lives in the application's own
+ * process, every call runs at memory speed and no database server is needed.</p>
+ * It is a drop-in replacement for {@code MySQLPersonDAO}: the {@code Person} transfer
+ * object and the {@code PersonDAO} interface are the same, only the storage differs.
+ * The only {@code SQLException} this class throws is {@code OptimisticLockException}, when
+ * a person being updated was changed by someone else since it was read.
+ */
+public class EmbeddedPersonDAO implements PersonDAO {
+
+    // Number of rows copied out of the database at a time by streamPeople().
+    private static final int STREAM_PAGE_SIZE = 1000;
+
+    private final EmbeddedDatabase database;
+
+    public EmbeddedPersonDAO(EmbeddedDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public int addPerson(Person person) {
+        database.insertPerson(person);
+        return 1;
+    }
+
+    @Override
+    public int addPeople(Collection<Person> people) {
+        for (Person person : people)
+            database.insertPerson(person);
+        return people.size();
+    }
+
+    @Override
+    public Person getPerson(int id) {
+        return database.selectPerson(id);
+    }
+
+    @Override
+    public List<Person> getPeople() {
+        return database.selectPeopleAfter(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Streams the people page by page, so no lock is held between pages and only
+     * one page is copied in memory at a time.
+     *
+     * @see PersonDAO#streamPeople()
+     */
+    @Override
+    public Stream<Person> streamPeople() {
+        Iterator<Person> people = new Iterator<Person>() {
+            private Iterator<Person> page = new ArrayList<Person>().iterator();
+            private int lastId = Integer.MIN_VALUE;
+            private boolean lastPage;
+
+            @Override
+            public boolean hasNext() {
+                if (!page.hasNext() && !lastPage) {
+                    List<Person> next = database.selectPeopleAfter(lastId, STREAM_PAGE_SIZE);
+                    lastPage = next.size() < STREAM_PAGE_SIZE;
+                    if (!next.isEmpty())
+                        lastId = next.get(next.size() - 1).getId();
+                    page = next.iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public Person next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return page.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                people, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public List<Person> getPeopleAfter(int lastId, int limit) {
+        return database.selectPeopleAfter(lastId, limit);
+    }
+
+    @Override
+    public List<Person> getPeoplePage(int offset, int limit) {
+        return database.selectPeoplePage(offset, limit);
+    }
+
+    @Override
+    public int countPeople() {
+        return database.countPeople();
+    }
+
+    @Override
+    public List<Person> findByName(String prefix, int limit) {
+        return database.selectPeopleByName(prefix, limit);
+    }
+
+    @Override
+    public PeopleChanges getChangedSince(long watermark) {
+        return database.selectChangedSince(watermark);
+    }
+
+    @Override
+    public int updatePerson(Person person) throws OptimisticLockException {
+        return updatePeople(List.of(person));
+    }
+
+    @Override
+    public int updatePeople(Collection<Person> people) throws OptimisticLockException {
+        int updated = 0;
+        List<Person> conflicting = new ArrayList<Person>();
+        for (Person person : people) {
+            int result = database.updatePerson(person);
+            if (result == EmbeddedDatabase.CONFLICT)
+                conflicting.add(person);
+            else
+                updated += result;
+        }
+        throwConflicts(conflicting);
+        return updated;
+    }
+
+    @Override
+    public UpsertResult upsertPeople(Collection<Person> people) throws OptimisticLockException {
+        List<Person> inserted = new ArrayList<Person>();
+        List<Person> updated = new ArrayList<Person>();
+        List<Person> conflicting = new ArrayList<Person>();
+        for (Person person : people) {
+            int result = database.upsertPerson(person);
+            if (result == EmbeddedDatabase.CONFLICT)
+                conflicting.add(person);
+            else if (result == 1)
+                inserted.add(person);
+            else
+                updated.add(person);
+        }
+        throwConflicts(conflicting);
+        return new UpsertResult(inserted, updated);
+    }
+
+    @Override
+    public int reserveIds(int count) {
+        return database.reserveIds(count);
+    }
+
+    @Override
+    public int deletePerson(int id) {
+        return database.deletePerson(id);
+    }
+
+    @Override
+    public int deleteAll() {
+        return database.deleteAllPeople();
+    }
+
+    // The other people are written by now; the conflicting ones are reported with their
+    // current rows. A row deleted in the meantime is not a conflict any more.
+    private void throwConflicts(List<Person> conflicting) throws OptimisticLockException {
+        List<OptimisticLockException.Conflict> conflicts = new ArrayList<OptimisticLockException.Conflict>();
+        for (Person person : conflicting) {
+            Person row = database.selectPerson(person.getId());
+            if (row != null)
+                conflicts.add(new OptimisticLockException.Conflict(person, row));
+        }
+        if (!conflicts.isEmpty())
+            throw new OptimisticLockException(conflicts);
+    }
+}
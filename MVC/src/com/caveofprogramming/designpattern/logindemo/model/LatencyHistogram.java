@@ -0,0 +1,132 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A lock-free histogram of latencies in nanoseconds, built like an HDR histogram:
+ * buckets are linear inside each power of two and the power of two picks the bucket
+ * group, so every recorded value is kept with a relative error below 1/64 (about 1.6%)
+ * from one nanosecond up to {@code MAX_VALUE}, using a few thousand counters.</p>
+ * Recording a value is an array index computation plus one atomic increment, so many
+ * threads can record at the same time without locking. Percentiles are computed from
+ * a copy of the counters, so they can be read while values are being recorded.
+ */
+public class LatencyHistogram {
+
+    // Each power of two is split into 2^(PRECISION_BITS - 1) linear buckets, so a bucket
+    // is narrower than 1/64 of the values it holds.
+    private static final int PRECISION_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << PRECISION_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    /**
+     * The largest value tracked precisely, about 18 minutes. Larger values are
+     * counted in the last bucket.
+     */
+    public static final long MAX_VALUE = (1L << 40) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds; negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(indexOf(value));
+        total.increment();
+        sum.add(value);
+
+        long currentMax;
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+            // another thread raised the maximum meanwhile; check again
+        }
+    }
+
+    /**
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * @return the largest recorded value, in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the recorded values, in nanoseconds.
+     */
+    public double getMean() {
+        long count = total.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * Returns the value below or at which the given percentage of the recorded values
+     * fall, as the highest value of the bucket holding that percentile.
+     *
+     * @param percentile a percentage between 0 and 100, such as 99.9.
+     * @return the percentile in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(highestValueOf(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets every recorded value. Values recorded while resetting may be partly lost.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+        total.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    // Values below SUB_BUCKETS get a bucket each; above, each power of two is
+    // split into HALF_SUB_BUCKETS buckets addressed by its top PRECISION_BITS bits.
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (PRECISION_BITS - 1);
+        int mantissa = (int) (value >>> shift);  // between HALF_SUB_BUCKETS and SUB_BUCKETS - 1
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (mantissa - HALF_SUB_BUCKETS);
+    }
+
+    // The largest value counted in the bucket at the given index.
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long mantissa = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,318 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * <p>Class that implements the {@code LogDAO} interface with files instead of a database.
+ * Entries are appended to fixed-size, memory-mapped segment files in a directory, so
+ * writing an entry is a memory copy and no database round trip is needed. The data is
+ * in the operating system's page cache as soon as {@code addEntry()} returns, so it
+ * survives a crash of the application; {@code flush()} forces it to the disk.</p>
+ * Each entry is stored as a length-prefixed binary record:
+ * <pre>
+ * int  length     total length of the record, in bytes
+ * long date       milliseconds since the epoch
+ * int  id         sequence number of the entry
+ * byte message[]  UTF-8 encoded message
+ * int  length     the length again, so the record can be read backwards
+ * </pre>
+ * <p>A length of 0 marks the end of the data in a segment. The leading length is written
+ * last, so a record that was only half written is never read. When a segment is full, a
+ * new one is started; old segments are deleted when there are more than
+ * {@code maxSegments} of them or their newest entry is older than {@code maxAge}. The age
+ * is checked whenever the log is opened, written or read, so a quiet log expires too.
+ * {@code close()} releases the segments once the log is no longer needed.</p>
+ * {@code getEntries(number)} starts from the end of the newest segment and follows the
+ * trailing lengths backwards, so reading the latest entries takes the same time however
+ * big the log is. Only one {@code MappedLogDAO} may use a directory at a time.
+ */
+public class MappedLogDAO implements LogDAO {
+
+    private static final int HEADER_SIZE = 4 + 8 + 4;  // length, date, id
+    private static final int TRAILER_SIZE = 4;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final long maxAge;
+
+    // Oldest segment first; the last one is the segment being written.
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private int lastId;
+    private boolean closed;
+
+    /**
+     * Opens the log stored in the given directory, creating it if needed, and
+     * recovers the position of the last entry.
+     *
+     * @param directory   the directory holding the segment files.
+     * @param segmentSize the size of each segment file, in bytes.
+     * @param maxSegments the maximum number of segments kept, or 0 for no limit.
+     * @param maxAge      milliseconds after which a full segment is deleted, or 0 for no limit.
+     * @throws UncheckedIOException if the directory or the segments cannot be read.
+     */
+    public MappedLogDAO(Path directory, int segmentSize, int maxSegments, long maxAge) {
+        if (segmentSize < HEADER_SIZE + TRAILER_SIZE + TRAILER_SIZE)
+            throw new IllegalArgumentException("segmentSize is too small");
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.maxAge = maxAge;
+
+        try {
+            Files.createDirectories(directory);
+            List<Path> files = new ArrayList<Path>();
+            try (DirectoryStream<Path> stream =
+                         Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path file : stream)
+                    files.add(file);
+            }
+            // Zero-padded sequence numbers make the file names sort in creation order.
+            files.sort(null);
+
+            for (Path file : files) {
+                long number = segmentNumber(file);
+                if (number >= 0)
+                    segments.add(Segment.open(file, number, segmentSize));
+                else
+                    System.out.println("Can't read log segment " + file + ", skipping it");
+            }
+            if (segments.isEmpty())
+                segments.add(Segment.create(segmentPath(0), 0, 0, segmentSize));
+
+            // The newest segment may be empty if the log was closed right after a roll.
+            for (Segment segment : segments)
+                lastId = Math.max(lastId, segment.lastId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't open log in " + directory, e);
+        }
+        expire();
+    }
+
+    /**
+     * Appends an entry, timestamped now, to the current segment, starting a new
+     * segment if the current one is full.
+     *
+     * @param message the message of the log entry.
+     * @throws IllegalArgumentException if the message does not fit in a segment.
+     * @throws UncheckedIOException     if a new segment cannot be created.
+     * @see LogDAO#addEntry(String)
+     */
+    @Override
+    public synchronized void addEntry(String message) {
+        checkOpen();
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_SIZE + text.length + TRAILER_SIZE;
+        // A segment always keeps room for the 0 length that marks its end.
+        if (length > segmentSize - TRAILER_SIZE)
+            throw new IllegalArgumentException("Log message is too long for a segment");
+
+        Segment segment = segments.get(segments.size() - 1);
+        if (segment.end + length > segmentSize - TRAILER_SIZE)
+            segment = roll(segment);
+        else
+            expire();
+
+        int id = ++lastId;
+        long date = System.currentTimeMillis();
+        MappedByteBuffer buffer = segment.buffer;
+        int start = segment.end;
+
+        buffer.putLong(start + 4, date);
+        buffer.putInt(start + 12, id);
+        buffer.put(start + HEADER_SIZE, text);
+        buffer.putInt(start + length - TRAILER_SIZE, length);
+        buffer.putInt(start, length);  // written last: the record now exists
+
+        segment.end = start + length;
+        segment.lastId = id;
+        segment.lastDate = date;
+    }
+
+    /**
+     * Reads the latest entries by walking backwards from the end of the newest segment.
+     * Only the returned entries are decoded.
+     *
+     * @param number the maximum number of entries to return.
+     * @return the latest {@code number} entries, newest first.
+     * @see LogDAO#getEntries(int)
+     */
+    @Override
+    public synchronized List<Log> getEntries(int number) {
+        checkOpen();
+        expire();
+        List<Log> entries = new ArrayList<Log>(Math.max(0, Math.min(number, 1024)));
+
+        for (int i = segments.size() - 1; i >= 0 && entries.size() < number; i--) {
+            Segment segment = segments.get(i);
+            MappedByteBuffer buffer = segment.buffer;
+            int position = segment.end;
+
+            while (position > 0 && entries.size() < number) {
+                int length = buffer.getInt(position - TRAILER_SIZE);
+                int start = position - length;
+
+                byte[] text = new byte[length - HEADER_SIZE - TRAILER_SIZE];
+                buffer.get(start + HEADER_SIZE, text);
+
+                Log entry = new Log();
+                entry.setDate(new Date(buffer.getLong(start + 4)));
+                entry.setId(buffer.getInt(start + 12));
+                entry.setMessage(new String(text, StandardCharsets.UTF_8));
+                entries.add(entry);
+
+                position = start;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Forces the current segment to the disk.
+     */
+    public synchronized void flush() {
+        checkOpen();
+        segments.get(segments.size() - 1).buffer.force();
+    }
+
+    /**
+     * Forces the current segment to the disk and releases every segment. Java cannot unmap
+     * a file explicitly, so the mappings go once the garbage collector reclaims them. The
+     * log cannot be used afterwards; the directory can be opened again by a new instance.
+     */
+    public synchronized void close() {
+        if (closed)
+            return;
+        segments.get(segments.size() - 1).buffer.force();
+        segments.clear();
+        closed = true;
+    }
+
+    /**
+     * @return the number of segment files currently kept.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    // Seals the full segment, starts the next one and applies the retention rules.
+    private Segment roll(Segment full) {
+        full.buffer.force();
+
+        Segment next;
+        try {
+            next = Segment.create(segmentPath(full.number + 1), full.number + 1, full.lastId, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't create a new log segment", e);
+        }
+        segments.add(next);
+        expire();
+        return next;
+    }
+
+    // Deletes the oldest segments while there are too many or they are too old. The
+    // segment being written is always kept.
+    private void expire() {
+        long now = System.currentTimeMillis();
+        while (segments.size() > 1) {
+            Segment oldest = segments.get(0);
+            boolean tooMany = maxSegments > 0 && segments.size() > maxSegments;
+            boolean tooOld = maxAge > 0 && now - oldest.lastDate > maxAge;
+            if (!tooMany && !tooOld)
+                break;
+
+            segments.remove(0);
+            try {
+                Files.deleteIfExists(oldest.file);
+            } catch (IOException e) {
+                System.out.println("Can't delete log segment " + oldest.file);
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("The log is closed");
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    // The sequence number in the name of a segment file, or -1 for a file that only
+    // looks like one.
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A segment file mapped in memory, plus where its data ends.
+     */
+    private static class Segment {
+        private final Path file;
+        private final long number;
+        private final MappedByteBuffer buffer;
+        private int end;
+        private int lastId;
+        private long lastDate;
+
+        private Segment(Path file, long number, MappedByteBuffer buffer) {
+            this.file = file;
+            this.number = number;
+            this.buffer = buffer;
+        }
+
+        private static Segment create(Path file, long number, int lastId, int size) throws IOException {
+            Segment segment = map(file, number, size);
+            segment.lastId = lastId;
+            segment.lastDate = System.currentTimeMillis();
+            return segment;
+        }
+
+        // Maps an existing segment and finds its end by hopping over the record headers.
+        private static Segment open(Path file, long number, int size) throws IOException {
+            Segment segment = map(file, number, size);
+            MappedByteBuffer buffer = segment.buffer;
+            int position = 0;
+            while (position + HEADER_SIZE + TRAILER_SIZE <= size - TRAILER_SIZE) {
+                int length = buffer.getInt(position);
+                if (length < HEADER_SIZE + TRAILER_SIZE || position + length > size - TRAILER_SIZE)
+                    break;
+                segment.lastDate = buffer.getLong(position + 4);
+                segment.lastId = buffer.getInt(position + 12);
+                position += length;
+            }
+            segment.end = position;
+            if (position == 0)
+                segment.lastDate = Files.getLastModifiedTime(file).toMillis();
+            return segment;
+        }
+
+        private static Segment map(Path file, long number, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // The mapping stays valid after the channel is closed.
+                return new Segment(file, number, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>The {@code MeteredPersonDAO} class is a decorator that measures every call made to
+ * any {@code PersonDAO}. For each DAO method it keeps a {@code LatencyHistogram} of the
+ * call durations and counts the calls, the calls that failed and the rows affected or
+ * returned, so a slow CRUD path can be pinpointed under load.</p>
+ * <p>Recording is lock-free, so the decorator can sit in front of a DAO shared by many
+ * threads without becoming a point of contention. {@code getSnapshot()} returns the
+ * percentiles and throughput of each operation, which can be dumped as text or JSON.</p>
+ * {@code streamPeople()} is measured from the call until the stream runs out of rows or is
+ * closed, whichever comes first, because that is when the rows are actually read. An
+ * iteration that throws counts as a failed call.
+ */
+public class MeteredPersonDAO implements PersonDAO {
+
+    private final PersonDAO personDAO;
+
+    private final Meter addPerson = new Meter("addPerson");
+    private final Meter addPeople = new Meter("addPeople");
+    private final Meter getPerson = new Meter("getPerson");
+    private final Meter getPeople = new Meter("getPeople");
+    private final Meter streamPeople = new Meter("streamPeople");
+    private final Meter getPeopleAfter = new Meter("getPeopleAfter");
+    private final Meter getPeoplePage = new Meter("getPeoplePage");
+    private final Meter countPeople = new Meter("countPeople");
+    private final Meter findByName = new Meter("findByName");
+    private final Meter getChangedSince = new Meter("getChangedSince");
+    private final Meter updatePerson = new Meter("updatePerson");
+    private final Meter updatePeople = new Meter("updatePeople");
+    private final Meter upsertPeople = new Meter("upsertPeople");
+    private final Meter reserveIds = new Meter("reserveIds");
+    private final Meter deletePerson = new Meter("deletePerson");
+    private final Meter deleteAll = new Meter("deleteAll");
+
+    private final List<Meter> meters = List.of(addPerson, addPeople, getPerson, getPeople,
+            streamPeople, getPeopleAfter, getPeoplePage, countPeople, findByName, getChangedSince,
+            updatePerson, updatePeople, upsertPeople, reserveIds, deletePerson, deleteAll);
+
+    private final AtomicLong startTime = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param personDAO the DAO to be measured.
+     */
+    public MeteredPersonDAO(PersonDAO personDAO) {
+        this.personDAO = personDAO;
+    }
+
+    @Override
+    public int addPerson(Person person) throws SQLException {
+        return measure(addPerson, () -> personDAO.addPerson(person));
+    }
+
+    @Override
+    public int addPeople(Collection<Person> people) throws SQLException {
+        return measure(addPeople, () -> personDAO.addPeople(people));
+    }
+
+    @Override
+    public Person getPerson(int id) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Person person = personDAO.getPerson(id);
+            getPerson.success(start, person == null ? 0 : 1);
+            return person;
+        } catch (SQLException | RuntimeException e) {
+            getPerson.failure(start);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<Person> getPeople() throws SQLException {
+        return measureList(getPeople, () -> personDAO.getPeople());
+    }
+
+    @Override
+    public Stream<Person> streamPeople() throws SQLException {
+        long start = System.nanoTime();
+        Stream<Person> people;
+        try {
+            people = personDAO.streamPeople();
+        } catch (SQLException | RuntimeException e) {
+            streamPeople.failure(start);
+            throw e;
+        }
+
+        // Recorded once: when the iteration throws, runs out of rows, or the stream is closed.
+        LongAdder rows = new LongAdder();
+        AtomicBoolean recorded = new AtomicBoolean();
+        Consumer<Boolean> finish = succeeded -> {
+            if (recorded.compareAndSet(false, true)) {
+                if (succeeded)
+                    streamPeople.success(start, rows.sum());
+                else
+                    streamPeople.failure(start);
+            }
+        };
+
+        // Not SIZED, so count() cannot skip the rows it should read.
+        Spliterator<Person> source = people.spliterator();
+        Spliterator<Person> metered = new Spliterators.AbstractSpliterator<Person>(source.estimateSize(),
+                source.characteristics() & ~(Spliterator.SIZED | Spliterator.SUBSIZED)) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Person> action) {
+                try {
+                    if (source.tryAdvance(person -> {
+                        rows.increment();
+                        action.accept(person);
+                    }))
+                        return true;
+                } catch (RuntimeException e) {
+                    finish.accept(false);
+                    throw e;
+                }
+                finish.accept(true);
+                return false;
+            }
+        };
+        return StreamSupport.stream(metered, false)
+                .onClose(() -> finish.accept(true))
+                .onClose(people::close);
+    }
+
+    @Override
+    public List<Person> getPeopleAfter(int lastId, int limit) throws SQLException {
+        return measureList(getPeopleAfter, () -> personDAO.getPeopleAfter(lastId, limit));
+    }
+
+    @Override
+    public List<Person> getPeoplePage(int offset, int limit) throws SQLException {
+        return measureList(getPeoplePage, () -> personDAO.getPeoplePage(offset, limit));
+    }
+
+    @Override
+    public int countPeople() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            int count = personDAO.countPeople();
+            countPeople.success(start, 1);
+            return count;
+        } catch (SQLException | RuntimeException e) {
+            countPeople.failure(start);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<Person> findByName(String prefix, int limit) throws SQLException {
+        return measureList(findByName, () -> personDAO.findByName(prefix, limit));
+    }
+
+    @Override
+    public PeopleChanges getChangedSince(long watermark) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PeopleChanges changes = personDAO.getChangedSince(watermark);
+            getChangedSince.success(start, changes.size());
+            return changes;
+        } catch (SQLException | RuntimeException e) {
+            getChangedSince.failure(start);
+            throw e;
+        }
+    }
+
+    @Override
+    public int updatePerson(Person person) throws SQLException {
+        return measure(updatePerson, () -> personDAO.updatePerson(person));
+    }
+
+    @Override
+    public int updatePeople(Collection<Person> people) throws SQLException {
+        return measure(updatePeople, () -> personDAO.updatePeople(people));
+    }
+
+    @Override
+    public UpsertResult upsertPeople(Collection<Person> people) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            UpsertResult result = personDAO.upsertPeople(people);
+            upsertPeople.success(start, result.size());
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            upsertPeople.failure(start);
+            throw e;
+        }
+    }
+
+    @Override
+    public int reserveIds(int count) throws SQLException {
+        return measure(reserveIds, () -> personDAO.reserveIds(count));
+    }
+
+    @Override
+    public int deletePerson(int id) throws SQLException {
+        return measure(deletePerson, () -> personDAO.deletePerson(id));
+    }
+
+    @Override
+    public int deleteAll() throws SQLException {
+        return measure(deleteAll, () -> personDAO.deleteAll());
+    }
+
+    /**
+     * Copies the current metrics of every operation. Throughput is averaged since
+     * this DAO was created or last reset.
+     *
+     * @return a snapshot of the metrics.
+     */
+    public MetricsSnapshot getSnapshot() {
+        long elapsed = System.nanoTime() - startTime.get();
+        List<MetricsSnapshot.Operation> operations = new ArrayList<MetricsSnapshot.Operation>(meters.size());
+        for (Meter meter : meters)
+            operations.add(meter.snapshot(elapsed));
+        return new MetricsSnapshot(elapsed, operations);
+    }
+
+    /**
+     * Clears every metric and restarts the throughput period.
+     */
+    public void reset() {
+        for (Meter meter : meters)
+            meter.reset();
+        startTime.set(System.nanoTime());
+    }
+
+    /**
+     * @return the measured {@code PersonDAO}.
+     */
+    public PersonDAO getPersonDAO() {
+        return personDAO;
+    }
+
+    private static int measure(Meter meter, Call<Integer> call) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            int rows = call.call();
+            meter.success(start, rows);
+            return rows;
+        } catch (SQLException | RuntimeException e) {
+            meter.failure(start);
+            throw e;
+        }
+    }
+
+    private static List<Person> measureList(Meter meter, Call<List<Person>> call) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            List<Person> people = call.call();
+            meter.success(start, people.size());
+            return people;
+        } catch (SQLException | RuntimeException e) {
+            meter.failure(start);
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T call() throws SQLException;
+    }
+
+    /**
+     * The live counters of one operation.
+     */
+    private static class Meter {
+        private final String name;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        private Meter(String name) {
+            this.name = name;
+        }
+
+        private void success(long start, long rowCount) {
+            latencies.record(System.nanoTime() - start);
+            calls.increment();
+            rows.add(rowCount);
+        }
+
+        private void failure(long start) {
+            latencies.record(System.nanoTime() - start);
+            calls.increment();
+            errors.increment();
+        }
+
+        private MetricsSnapshot.Operation snapshot(long elapsedNanos) {
+            return new MetricsSnapshot.Operation(name, calls.sum(), errors.sum(), rows.sum(),
+                    elapsedNanos, latencies);
+        }
+
+        private void reset() {
+            latencies.reset();
+            calls.reset();
+            errors.reset();
+            rows.reset();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>A point-in-time copy of the metrics gathered by a {@code MeteredPersonDAO}: one
+ * {@code Operation} per DAO method, with its call, error and row counts, its throughput
+ * and its latency percentiles.</p>
+ * A snapshot never changes once it is taken, so it can be printed with {@code toText()}
+ * or exported with {@code toJson()} while the DAO keeps recording.
+ */
+public class MetricsSnapshot {
+
+    private final long elapsedNanos;
+    private final List<Operation> operations;
+
+    MetricsSnapshot(long elapsedNanos, List<Operation> operations) {
+        this.elapsedNanos = elapsedNanos;
+        this.operations = Collections.unmodifiableList(new ArrayList<Operation>(operations));
+    }
+
+    /**
+     * @return the nanoseconds covered by this snapshot, since the metrics were created or reset.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the operations, in the order of the {@code PersonDAO} methods.
+     */
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * @param name the name of a {@code PersonDAO} method, such as {@code "getPerson"}.
+     * @return the operation with that name, or {@code null} if there is none.
+     */
+    public Operation getOperation(String name) {
+        for (Operation operation : operations) {
+            if (operation.getName().equals(name))
+                return operation;
+        }
+        return null;
+    }
+
+    /**
+     * Formats the snapshot as a table, one line per operation that was called,
+     * with latencies in microseconds.
+     *
+     * @return the snapshot as text.
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "%-16s %10s %8s %10s %10s %10s %10s %10s %10s%n",
+                "operation", "calls", "errors", "rows", "ops/s", "p50(us)", "p99(us)", "p999(us)", "max(us)"));
+
+        for (Operation operation : operations) {
+            if (operation.getCalls() == 0)
+                continue;
+            text.append(String.format(Locale.ROOT, "%-16s %10d %8d %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    operation.getName(), operation.getCalls(), operation.getErrors(), operation.getRows(),
+                    operation.getThroughput(), micros(operation.getP50()), micros(operation.getP99()),
+                    micros(operation.getP999()), micros(operation.getMax())));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Formats the snapshot as a JSON object, with latencies in nanoseconds.
+     *
+     * @return the snapshot as JSON.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"elapsedNanos\":").append(elapsedNanos).append(",\"operations\":[");
+
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            if (i > 0)
+                json.append(',');
+            // Operation names are Java identifiers, so they need no escaping.
+            json.append("{\"name\":\"").append(operation.getName()).append('"')
+                    .append(",\"calls\":").append(operation.getCalls())
+                    .append(",\"errors\":").append(operation.getErrors())
+                    .append(",\"rows\":").append(operation.getRows())
+                    .append(",\"throughput\":").append(String.format(Locale.ROOT, "%.3f", operation.getThroughput()))
+                    .append(",\"meanNanos\":").append(String.format(Locale.ROOT, "%.1f", operation.getMean()))
+                    .append(",\"p50Nanos\":").append(operation.getP50())
+                    .append(",\"p99Nanos\":").append(operation.getP99())
+                    .append(",\"p999Nanos\":").append(operation.getP999())
+                    .append(",\"maxNanos\":").append(operation.getMax())
+                    .append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    /**
+     * The metrics of one {@code PersonDAO} method. Latencies are in nanoseconds.
+     */
+    public static class Operation {
+        private final String name;
+        private final long calls;
+        private final long errors;
+        private final long rows;
+        private final double throughput;
+        private final double mean;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        Operation(String name, long calls, long errors, long rows, long elapsedNanos,
+                  LatencyHistogram latencies) {
+            this.name = name;
+            this.calls = calls;
+            this.errors = errors;
+            this.rows = rows;
+            this.throughput = elapsedNanos > 0 ? calls * 1e9 / elapsedNanos : 0;
+            this.mean = latencies.getMean();
+            this.p50 = latencies.getPercentile(50);
+            this.p99 = latencies.getPercentile(99);
+            this.p999 = latencies.getPercentile(99.9);
+            this.max = latencies.getMax();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * @return the number of calls that threw an exception.
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return the number of rows added, updated or deleted, or returned by a query.
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return the average number of calls per second over the snapshot period.
+         */
+        public double getThroughput() {
+            return throughput;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+}
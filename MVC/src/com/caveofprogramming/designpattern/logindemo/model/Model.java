@@ -1,12 +1,23 @@
 package com.caveofprogramming.designpattern.logindemo.model;
 
+import com.caveofprogramming.designpattern.logindemo.view.PeopleUpdatedEvent;
 import com.caveofprogramming.designpattern.logindemo.view.PeopleUpdatedListener;
 
-import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * The Model class deals with the data on the back end.<br>
@@ -34,18 +45,103 @@ import java.util.Set;
  * </p>
  */
 public class Model {
-    // Could use a sorted set here -- LinkedHashSet or TreeSet
-    private final Set<Person> people = new HashSet<Person>();
+    // The people by id, in display order; the indices of a PeopleUpdatedEvent refer to this order.
+    private final PeopleStore people = new PeopleStore();
     private PeopleUpdatedListener peopleUpdatedListener;
 
+    /*
+     * Change set since the last load() or save(). Only these rows are written by save().
+     * Person.equals() compares the name and password, which can change, so the added
+     * and modified people are tracked by identity.
+     */
+    private final Set<Person> added = Collections.newSetFromMap(new IdentityHashMap<Person, Boolean>());
+    private final Set<Person> modified = Collections.newSetFromMap(new IdentityHashMap<Person, Boolean>());
+    private final Set<Integer> deletedIds = new LinkedHashSet<Integer>();
+    // Decides what to keep when a save finds that someone else changed a person.
+    private ConflictResolver conflictResolver = ConflictResolver.KEEP_THEIRS;
+    // Where the next refresh() starts from: the database changes up to it are shown.
+    private long watermark;
+    // Saves that took their changes, and those not finished yet; a refresh overlapping a
+    // save could see new rows before their people are given their ids here.
+    private long savesStarted;
+    private int savesRunning;
+
+    private final AsyncPersonDAO personDAO;
+    // Runs the code that changes the people Set after a database call; see setEventExecutor().
+    private Executor eventExecutor = Runnable::run;
+
+    /*
+     * Write-behind autosave; see setAutosave(). The scheduler only waits for the delay
+     * and hands the flush over to the event executor, so the change set is still only
+     * touched on the event thread. Saves and flushes are chained on lastFlush, so they write
+     * one after another.
+     */
+    private ScheduledExecutorService autosaveScheduler;
+    private ScheduledFuture<?> scheduledAutosave;
+    private int autosaveBatchSize;
+    private long autosaveDelay;
+    private CompletableFuture<Void> lastFlush = CompletableFuture.completedFuture(null);
+    private boolean flushQueued;
+
+    /**
+     * Creates a model that works with the MySQL database. The {@code PersonDAO} comes
+     * from the MySQL {@code DAOFactory} and is called asynchronously.
+     */
+    public Model() {
+        // Here the specific database DAO factory is obtained
+        this(new AsyncPersonDAO(DAOFactory.getFactory(DAOFactory.MYSQL).getPersonDAO()));
+    }
+
+    /**
+     * Creates a model that reads and writes people through the given DAO.
+     *
+     * @param personDAO an asynchronous wrapper around any {@code PersonDAO}.
+     */
+    public Model(AsyncPersonDAO personDAO) {
+        this.personDAO = personDAO;
+    }
+
+    /**
+     * Sets the executor that applies the results of database calls to the model and
+     * notifies the {@code PeopleUpdatedListener}. A Swing application passes
+     * {@code SwingUtilities::invokeLater}, so the model is only ever changed on the
+     * event dispatch thread. By default, results are applied on the thread that
+     * completed the database call.
+     *
+     * @param eventExecutor the executor used to apply results.
+     */
+    public void setEventExecutor(Executor eventExecutor) {
+        this.eventExecutor = eventExecutor;
+    }
+
+    /**
+     * @return the DAO this model reads and writes people through.
+     */
+    public AsyncPersonDAO getPersonDAO() {
+        return personDAO;
+    }
+
     /**
      * Gets the temporal {@code List} that holds the people data from the
      * database and new created {@code Person}.
+     * <p>
+     * The list is a read-only view in display order, not a copy, so it is free to get
+     * and always shows the current people. Like the model, it must only be read on
+     * the event thread.
+     * </p>
      *
      * @return a list holding {@code Person} entities.
      */
     public List<Person> getPeople() {
-        return new ArrayList<Person>(people);
+        return people.asList();
+    }
+
+    /**
+     * @param id the id of a saved person.
+     * @return the person with the given id, or {@code null} if the model holds none.
+     */
+    public Person getPerson(int id) {
+        return people.getById(id);
     }
 
     // Sets the listener that updates the temporal list of people
@@ -53,90 +149,571 @@ public class Model {
         this.peopleUpdatedListener = peopleUpdatedListener;
     }
 
+    /**
+     * Sets how the people changed by someone else while they were edited here are
+     * resolved after a save; see {@code OptimisticLockException}. The default,
+     * {@code ConflictResolver.KEEP_THEIRS}, drops the local change.
+     *
+     * @param conflictResolver the resolver called for each conflicting person.
+     */
+    public void setConflictResolver(ConflictResolver conflictResolver) {
+        this.conflictResolver = conflictResolver;
+    }
+
+    /**
+     * @return the watermark the next {@code refresh()} reads the changes after, or 0 if
+     * the people have not been loaded.
+     */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Records that the people held by the model include every change to the database up
+     * to the given watermark. Used once people loaded with {@code addLoadedPeople()} are
+     * complete, with a watermark taken before they were read.
+     *
+     * @param watermark a watermark returned by {@code PersonDAO.getChangedSince()}.
+     */
+    public void setWatermark(long watermark) {
+        this.watermark = watermark;
+    }
+
     /**
      * Add a {@code Person} to the {@code people} set and
      * temporarily stores it as a list in the application's GUI.
      * <p>
      * If the application is stopped or reset, any {@code Person}
-     * that has not been persisted to the database will be lost.
+     * that has not been persisted to the database will be lost,
+     * unless autosave is on; see {@code setAutosave()}.
      * </p>
      *
      * @param person a {@code Person} instance.
      */
     public void addPerson(Person person) {
-        people.add(person);
-        firePeopleListUpdated();
+        if (!people.add(person))
+            return;
+
+        if (person.getId() == 0)
+            added.add(person);
+        else
+            modified.add(person);
+
+        int index = people.size() - 1;
+        firePeopleListUpdated(PeopleUpdatedEvent.Type.ADDED, index, index, List.of(person));
+        autosaveChanges();
+    }
+
+    /**
+     * Changes the name and password of a {@code Person} held by the model and
+     * records it as modified, so the next {@code save()} updates its row.
+     *
+     * @param person   the {@code Person} to be changed.
+     * @param name     the new name.
+     * @param password the new password.
+     */
+    public void updatePerson(Person person, String name, String password) {
+        int index = people.indexOf(person);
+        if (index < 0)
+            return;
+
+        // People are stored by id or identity, so they can be changed in place.
+        person.setName(name);
+        person.setPassword(password);
+
+        if (person.getId() != 0)
+            modified.add(person);
+        firePeopleListUpdated(PeopleUpdatedEvent.Type.CHANGED, index, index, List.of(person));
+        autosaveChanges();
     }
 
     /**
      * Deletes a person from the {@code people} set and updates
      * the temporal list holding {@code Person} entities in the application.
+     * A person that is already in the database is deleted from it on the
+     * next {@code save()}.
      *
      * @param person the {@code Person} to be deleted.
      */
     public void deletePerson(Person person) {
-        people.remove(person);
-        firePeopleListUpdated();
+        int index = people.remove(person);
+        if (index < 0)
+            return;
+
+        // A person without an id was never written; one with an id may have been, even
+        // if a failed save put it back among the added people.
+        added.remove(person);
+        modified.remove(person);
+        if (person.getId() != 0)
+            deletedIds.add(person.getId());
+        firePeopleListUpdated(PeopleUpdatedEvent.Type.REMOVED, index, index, List.<Person>of());
+        autosaveChanges();
+    }
+
+    /**
+     * @return {@code true} if people have been added, changed or deleted
+     * since the last {@code load()} or {@code save()}.
+     */
+    public boolean hasUnsavedChanges() {
+        return !added.isEmpty() || !modified.isEmpty() || !deletedIds.isEmpty();
     }
 
     /**
-     * Saves or updates the {@code Person} entities store in the {@code people} Set
-     * to the {@code Database}.
+     * Saves the changes made to the {@code people} Set since the last {@code load()}
+     * or {@code save()} to the {@code Database}: new people are inserted, changed
+     * people are updated and deleted people are deleted. Unchanged people cost
+     * nothing. New people receive the id generated by the database.
+     * <p>
+     * The database work runs on the executor of the {@code AsyncPersonDAO}; this method
+     * returns straight away. Saves and flushes are queued, so they never write the same
+     * people at the same time: the change set is taken once the writes queued before this
+     * one are over, and whatever could not be written is put back into it if the save fails.
+     * </p>
+     * <p>
+     * Several users can edit the same people at the same time: every row has a version,
+     * and a person is only written if its row still has the version it was read with.
+     * Nothing is locked while editing. A person changed by someone else in the meantime
+     * is resolved with the {@code ConflictResolver}, and the other changes are saved.
+     * </p>
      *
-     * @throws SQLException if a database access error occurs or this
-     *                      method is called on a closed connection
+     * @return a future completed once the changes are saved. It completes exceptionally
+     * with a {@code SQLException} cause if a database access error occurs, or with an
+     * {@code OptimisticLockException} cause once the conflicts have been resolved.
      */
-    public void save() throws SQLException {
-        /*
-         * Note: this very simple implementation takes no account of what would
-         * happen if multiple users were using this application. In this case,
-         * we'd probably want to think of stuff like stored procedures,
-         * transactions and so on, and how to handle the case where multiple
-         * users try to modify the same person record at the same time.
-         */
-        // Here the specific database DAO factory is obtained
-        DAOFactory factory = DAOFactory.getFactory(DAOFactory.MYSQL);
-        PersonDAO personDAO = factory.getPersonDAO();   // personDAO with MySQL implementation.
-
-        for (Person person : people) {
-            // If the person has an ID, the record must
-            // already exist in the database, because we
-            // get the IDs from the database autoincrement
-            // ID column.
-            if (person.getId() == 0)
-                personDAO.addPerson(new Person(
-                        person.getName(),
-                        person.getPassword()
-                ));
-            else
-                personDAO.updatePerson(person);
+    public CompletableFuture<Void> save() {
+        CompletableFuture<Void> save = afterLastWrite(this::write);
+        lastFlush = save;
+        return save;
+    }
+
+    /**
+     * Turns on write-behind autosave: changes made with {@code addPerson()},
+     * {@code updatePerson()} and {@code deletePerson()} are queued and written in the
+     * background with {@code flush()} as soon as {@code batchSize} changes are waiting,
+     * or {@code delay} milliseconds after the first of them, whichever comes first.
+     * This makes edits durable without a database round trip per edit.
+     * <p>
+     * A failed autosave keeps its changes and is tried again after the delay.
+     * Calling this method again changes the batch size and delay.
+     * </p>
+     *
+     * @param batchSize the number of waiting changes that triggers a flush.
+     * @param delay     the maximum milliseconds a change waits before it is written.
+     */
+    public void setAutosave(int batchSize, long delay) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        if (delay < 0)
+            throw new IllegalArgumentException("delay must not be negative");
+
+        autosaveBatchSize = batchSize;
+        autosaveDelay = delay;
+        if (autosaveScheduler == null) {
+            autosaveScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "model-autosave");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        autosaveChanges();
+    }
+
+    /**
+     * Turns autosave off. Changes already queued stay unsaved until the next
+     * {@code save()} or {@code flush()}.
+     */
+    public void stopAutosave() {
+        cancelScheduledAutosave();
+        if (autosaveScheduler != null) {
+            autosaveScheduler.shutdown();
+            autosaveScheduler = null;
+        }
+    }
+
+    public boolean isAutosaveOn() {
+        return autosaveScheduler != null;
+    }
+
+    /**
+     * Writes the queued changes now. If a save or flush is already writing, this one
+     * starts when it is over, so writes never overlap; a flush that is waiting to start
+     * is shared by every caller.
+     *
+     * @return a future completed once the changes queued before this call are saved.
+     */
+    public CompletableFuture<Void> flush() {
+        cancelScheduledAutosave();
+        if (!flushQueued) {
+            flushQueued = true;
+            lastFlush = afterLastWrite(() -> {
+                flushQueued = false;
+                return write();
+            });
+        }
+        return lastFlush;
+    }
+
+    /**
+     * Stops autosave and writes every unsaved change, waiting for the writes already
+     * running to finish. Unlike {@code save()}, this method blocks, and it does not need
+     * the event executor, so it can be called on the event dispatch thread while the
+     * application is exiting. The {@code AsyncPersonDAO} is shut down, so the model
+     * cannot read or write the database afterwards.
+     *
+     * @param timeout the maximum milliseconds to wait.
+     * @return {@code true} if every change was written in time.
+     */
+    public boolean close(long timeout) {
+        stopAutosave();
+        ChangeSet changes = takeChanges();
+        CompletableFuture<Void> write = CompletableFuture.completedFuture(null);
+        if (!changes.isEmpty()) {
+            write = personDAO.submit(dao -> {
+                changes.write(dao);
+                return (Void) null;
+            });
+        }
+        personDAO.shutdown();
+
+        try {
+            if (!personDAO.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                System.out.println("Can't save all the changes in time");
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (write.isCompletedExceptionally()) {
+            System.out.println("Can't save " + (changes.size() - changes.getWritten()) + " changes");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queues a save whose changes are written by the caller, such as a background task
+     * that reports its progress. Once the saves and flushes queued before it are over,
+     * the changes made since the last {@code load()} or save are taken on the event
+     * executor and complete the returned future; the model then has no unsaved changes
+     * until it is edited again. The taken {@code ChangeSet} must be handed back to
+     * {@code finishSave()} once written, whether the write succeeded or not: the saves and
+     * flushes queued afterwards wait until then, so they never write the same people at
+     * the same time.
+     *
+     * @return a future completed with the people to be inserted, updated and deleted.
+     */
+    public CompletableFuture<ChangeSet> queueChanges() {
+        CompletableFuture<ChangeSet> taken = new CompletableFuture<ChangeSet>();
+        lastFlush = afterLastWrite(() -> {
+            ChangeSet changes = takeChanges();
+            taken.complete(changes);
+            return changes.whenFinished();
+        });
+        return taken;
+    }
+
+    // Takes the changes made since the last load() or save, to be written by a background task.
+    // The ChangeSet copies the people, so the event thread can go on editing them meanwhile.
+    private ChangeSet takeChanges() {
+        ChangeSet changes = new ChangeSet(new ArrayList<Person>(added), new ArrayList<Person>(modified),
+                new ArrayList<Integer>(deletedIds));
+        added.clear();
+        modified.clear();
+        deletedIds.clear();
+        savesStarted++;
+        savesRunning++;
+        return changes;
+    }
+
+    /**
+     * Completes a save started with {@code queueChanges()}: the changes that could not
+     * be written, because the write failed or was cancelled, are put back into the
+     * model, and the people who received an id are reported to the listener. The next
+     * queued save or flush then starts.
+     *
+     * @param changes the changes taken by {@code queueChanges()}.
+     */
+    public void finishSave(ChangeSet changes) {
+        try {
+            savesRunning--;
+            List<Person> edited = changes.copyBack();
+            restoreChanges(changes.getUnwrittenAdded(), changes.getUnwrittenUpdated(),
+                    changes.getUnwrittenDeleted());
+            // Edited while their copies were written; a new person was not even marked as modified.
+            for (Person person : edited) {
+                if (person.getId() != 0 && !added.contains(person) && people.contains(person))
+                    modified.add(person);
+            }
+            for (Person person : changes.getAdded())
+                people.idAssigned(person);
+            fireIdsAssigned(changes.getAdded());
+            resolveConflicts(changes.getConflicts());
+        } finally {
+            changes.finish();
+        }
+    }
+
+    /**
+     * Removes every person from the model, before people are loaded in chunks
+     * with {@code addLoadedPeople()}. Unsaved changes are discarded.
+     */
+    public void clear() {
+        people.clear();
+        added.clear();
+        modified.clear();
+        deletedIds.clear();
+        watermark = 0;
+        firePeopleListUpdated(PeopleUpdatedEvent.Type.RELOADED, 0, -1, List.<Person>of());
+    }
+
+    /**
+     * Appends people read from the database to the model. They are not unsaved
+     * changes, so the next save does not write them again.
+     *
+     * @param loaded the people read from the database.
+     */
+    public void addLoadedPeople(List<Person> loaded) {
+        List<Person> appended = new ArrayList<Person>(loaded.size());
+        for (Person person : loaded) {
+            if (people.add(person))
+                appended.add(person);
+        }
+        if (!appended.isEmpty()) {
+            int first = people.size() - appended.size();
+            firePeopleListUpdated(PeopleUpdatedEvent.Type.ADDED, first, people.size() - 1, appended);
         }
-        load(); // Load new Person IDs added to the database to the GUI
     }
 
     /**
      * Get the all the {@code Person} entries from the database to
      * a {@code Set} and save them temporally as a list in the
      * GUI of the application.
+     * <p>
+     * The people are read on the executor of the {@code AsyncPersonDAO}, and the
+     * {@code people} Set is replaced on the event executor once they arrive.
+     * </p>
+     * The people are read as a snapshot of {@code PersonDAO.getChangedSince()}, whose
+     * watermark is kept so {@code refresh()} only reads what changes afterwards.
      *
-     * @throws SQLException if a database access error occurs or this
-     *                      method is called on a closed connection
+     * @return a future completed once the people are loaded. It completes exceptionally
+     * with a {@code SQLException} cause if a database access error occurs.
      */
-    public void load() throws SQLException {
-        DAOFactory factory = DAOFactory.getFactory(DAOFactory.MYSQL);
-        PersonDAO personDAO = factory.getPersonDAO();
+    public CompletableFuture<Void> load() {
+        return personDAO.getChangedSince(0).thenAcceptAsync(snapshot -> {
+            people.clear();
+            for (Person person : snapshot.getChanged())
+                people.add(person);
+            added.clear();
+            modified.clear();
+            deletedIds.clear();
+            watermark = snapshot.getWatermark();
+            firePeopleListUpdated(PeopleUpdatedEvent.Type.RELOADED, 0, people.size() - 1,
+                    new ArrayList<Person>(people.asList()));
+        }, eventExecutor);
+    }
 
-        people.clear();
-        people.addAll(personDAO.getPeople());
-        firePeopleListUpdated();
+    /**
+     * Brings the people up to date with the changes made to the database by anyone since
+     * the last {@code load()} or {@code refresh()}, without reading the whole table again:
+     * only the people inserted, updated or deleted after the watermark are transferred.
+     * <p>
+     * Unsaved changes win: a person changed or deleted here keeps the local change until
+     * the next save, which reports any conflict to the {@code ConflictResolver}. Each
+     * change is reported to the listener on its own, so the list is not rebuilt.
+     * </p>
+     * A refresh that overlaps a save is dropped without moving the watermark, so the next
+     * refresh reads its changes again.
+     *
+     * @return a future completed once the changes are applied. It completes exceptionally
+     * with a {@code SQLException} cause if a database access error occurs.
+     */
+    public CompletableFuture<Void> refresh() {
+        long since = watermark;
+        long saves = savesRunning == 0 ? savesStarted : -1;
+        return personDAO.getChangedSince(since).thenAcceptAsync(changes -> {
+            // A load finished in the meantime, and holds newer people than the changes.
+            if (watermark != since || savesStarted != saves)
+                return;
+            applyChanges(changes);
+            watermark = changes.getWatermark();
+        }, eventExecutor);
+    }
+
+    // Starts the write once the saves and flushes queued before it are over, whether they
+    // failed or not. A write completes on the event executor, so the next one starts there too.
+    private CompletableFuture<Void> afterLastWrite(Supplier<CompletableFuture<Void>> write) {
+        return lastFlush.handle((result, error) -> (Void) null).thenCompose(ignored -> write.get());
+    }
+
+    private CompletableFuture<Void> write() {
+        // Take the change set, so edits made while saving are kept for the next save.
+        ChangeSet changes = takeChanges();
+
+        return personDAO.submit(dao -> {
+            // Each group is written as JDBC batches rather than one round trip per person.
+            // The DAO writes the generated IDs back into the new people, so there is
+            // no need to reload the whole table to show them in the GUI.
+            changes.write(dao);
+            return (Void) null;
+        }).whenCompleteAsync((result, error) -> finishSave(changes), eventExecutor);
+    }
+
+    // Flushes once enough changes are waiting, or schedules a flush after the delay.
+    private void autosaveChanges() {
+        if (autosaveScheduler == null || !hasUnsavedChanges())
+            return;
+
+        if (added.size() + modified.size() + deletedIds.size() >= autosaveBatchSize)
+            autosave();
+        else
+            scheduleAutosave();
+    }
+
+    private void scheduleAutosave() {
+        if (autosaveScheduler != null && scheduledAutosave == null) {
+            scheduledAutosave = autosaveScheduler.schedule(
+                    () -> eventExecutor.execute(this::autosave), autosaveDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void cancelScheduledAutosave() {
+        if (scheduledAutosave != null) {
+            scheduledAutosave.cancel(false);
+            scheduledAutosave = null;
+        }
+    }
+
+    private void autosave() {
+        scheduledAutosave = null;
+        flush().whenComplete((result, error) -> {
+            // The changes are back in the change set; try again after the delay.
+            if (error != null) {
+                System.out.println("Can't autosave: " + error.getMessage());
+                scheduleAutosave();
+            }
+        });
+    }
+
+    // Applies the changes read by refresh(), deletes first: an id deleted and then
+    // inserted again is in both lists.
+    private void applyChanges(PeopleChanges changes) {
+        if (changes.isSnapshot()) {
+            Set<Integer> ids = new HashSet<Integer>();
+            for (Person person : changes.getChanged())
+                ids.add(person.getId());
+            for (Person person : new ArrayList<Person>(people.asList())) {
+                if (person.getId() != 0 && !ids.contains(person.getId()))
+                    removeDeleted(person);
+            }
+        }
+        for (int id : changes.getDeletedIds()) {
+            Person person = people.getById(id);
+            if (person != null)
+                removeDeleted(person);
+        }
+
+        for (Person changed : changes.getChanged()) {
+            if (deletedIds.contains(changed.getId()))
+                continue;
+
+            Person person = people.getById(changed.getId());
+            if (person == null) {
+                people.add(changed);
+                int index = people.size() - 1;
+                firePeopleListUpdated(PeopleUpdatedEvent.Type.ADDED, index, index, List.of(changed));
+            } else if (!modified.contains(person) && (person.getVersion() != changed.getVersion()
+                    || !person.equals(changed))) {
+                person.setName(changed.getName());
+                person.setPassword(changed.getPassword());
+                person.setVersion(changed.getVersion());
+                int index = people.indexOf(person);
+                firePeopleListUpdated(PeopleUpdatedEvent.Type.CHANGED, index, index, List.of(person));
+            }
+        }
+    }
+
+    // Removes a person deleted from the database, unless it was changed here since.
+    private void removeDeleted(Person person) {
+        if (modified.contains(person) || added.contains(person))
+            return;
+        int index = people.remove(person);
+        if (index >= 0)
+            firePeopleListUpdated(PeopleUpdatedEvent.Type.REMOVED, index, index, List.<Person>of());
+    }
+
+    // Puts back into the change set whatever a save did not write,
+    // unless the person was deleted from the model in the meantime.
+    private void restoreChanges(List<Person> toAdd, List<Person> toUpdate, List<Integer> toDelete) {
+        for (Person person : toAdd) {
+            if (people.contains(person))
+                added.add(person);
+        }
+        for (Person person : toUpdate) {
+            if (people.contains(person))
+                modified.add(person);
+        }
+        deletedIds.addAll(toDelete);
+    }
+
+    // Applies the ConflictResolver to the people someone else changed since they were read.
+    private void resolveConflicts(List<OptimisticLockException.Conflict> conflicts) {
+        for (OptimisticLockException.Conflict conflict : conflicts) {
+            Person mine = conflict.getMine();
+            Person theirs = conflict.getTheirs();
+            // A person deleted from the model in the meantime stays deleted.
+            int index = people.indexOf(mine);
+            if (index < 0)
+                continue;
+
+            Person kept = conflictResolver.resolve(mine, theirs);
+            mine.setName(kept.getName());
+            mine.setPassword(kept.getPassword());
+            // Based on the current row, so the next save does not conflict again.
+            mine.setVersion(theirs.getVersion());
+            if (mine.equals(theirs))
+                modified.remove(mine);
+            else
+                modified.add(mine);
+            firePeopleListUpdated(PeopleUpdatedEvent.Type.CHANGED, index, index, List.of(mine));
+        }
+        if (!conflicts.isEmpty())
+            autosaveChanges();
+    }
+
+    // Saved people show their new ids, so their rows are reported as changed: one event
+    // per run of adjacent rows, which is usually a single run at the end of the list.
+    private void fireIdsAssigned(List<Person> saved) {
+        int[] indices = new int[saved.size()];
+        int count = 0;
+        for (Person person : saved) {
+            int index = people.indexOf(person);
+            if (index >= 0)
+                indices[count++] = index;
+        }
+        Arrays.sort(indices, 0, count);
+
+        int from = 0;
+        for (int i = 1; i <= count; i++) {
+            if (i < count && indices[i] <= indices[i - 1] + 1)
+                continue;
+            List<Person> rows = people.asList().subList(indices[from], indices[i - 1] + 1);
+            firePeopleListUpdated(PeopleUpdatedEvent.Type.CHANGED, indices[from], indices[i - 1],
+                    new ArrayList<Person>(rows));
+            from = i;
+        }
     }
 
     // Calls the method on PeopleUpdatedListener interface to update the list
     // of Person that is hold in application memory (not database);
-    // the same list that is displayed on the GUI.
-    private void firePeopleListUpdated() {
+    // the same list that is displayed on the GUI. Only the change is sent,
+    // so the listener does not have to rebuild its whole list.
+    private void firePeopleListUpdated(PeopleUpdatedEvent.Type type, int fromIndex, int toIndex,
+                                       List<Person> changed) {
         if (peopleUpdatedListener != null) {
-            peopleUpdatedListener.onPeopleListUpdated();
+            peopleUpdatedListener.onPeopleListUpdated(
+                    new PeopleUpdatedEvent(type, fromIndex, toIndex, changed));
         }
     }
 
@@ -6,27 +6,34 @@ package com.caveofprogramming.designpattern.logindemo.model;
  */
 public class MySQLDAOFactory extends DAOFactory {
 
+    @Override
+    public int getType() {
+        return MYSQL;
+    }
 
     /**
      * Creates a new instance of {@code MySQLPersonDAO} and returns
-     * it as an {@code PersonDAO} abstract class.
+     * it as an {@code PersonDAO} abstract class. The instance is shared
+     * by every caller of {@code getPersonDAO()}.
      *
      * @return new instance {@code MySQLPersonDAO} as a {@code PersonDAO}.
      * @see DAOFactory#getPersonDAO()
      */
     @Override
-    public PersonDAO getPersonDAO() {
+    protected PersonDAO createPersonDAO() {
         return new MySQLPersonDAO();
     }
 
     /**
-     * Creates a new instance of {@code getLogDAO} abstract class.
+     * Creates a new instance of {@code getLogDAO} abstract class. The instance
+     * is shared by every caller of {@code getLogDAO()}, so all the log entries
+     * go through a single ring buffer and flusher thread.
      *
      * @return new {@code getLogDAO} instance.
      * @see DAOFactory#getLogDAO()
      */
     @Override
-    public LogDAO getLogDAO() {
+    protected LogDAO createLogDAO() {
         return new MySQLLogDAO();
     }
 
@@ -1,33 +1,277 @@
 package com.caveofprogramming.designpattern.logindemo.model;
 
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Class that implements the {@code LogDAO} interface to work with a MySQL database.
- * It uses the {@code Log} bean to handle the data. While not implemented, it serves as an
- * example of how DAOs can be independently implemented for different databases and be
- * abstracted using the {@code LogDAO} interface.
+ * <p>Class that implements the {@code LogDAO} interface to work with a MySQL database.
+ * It uses the {@code Log} bean to handle the data.</p>
+ * <p>Audit entries must not slow down the code that writes them, so {@code addEntry()}
+ * does not touch the database. It only publishes the entry into an in-memory
+ * {@code RingBuffer}, which takes well under a microsecond. A background flusher thread
+ * drains the ring and inserts the entries into the {@code log} table with JDBC batches,
+ * either once {@code batchSize} entries are waiting or every {@code flushInterval}
+ * milliseconds, whichever comes first.</p>
+ * When the ring is full, the {@code BackpressurePolicy} decides what {@code addEntry()} does:
+ * <ul>
+ *     <li>{@code BLOCK}: waits until the flusher frees a slot. No entry is lost.</li>
+ *     <li>{@code DROP}: drops the entry and counts it.</li>
+ *     <li>{@code SAMPLE}: keeps one entry out of every {@code sampleRate}, waiting for a slot
+ *     for it, and drops the others.</li>
+ * </ul>
  */
 public class MySQLLogDAO implements LogDAO {
-    /*
-     *(non-Javadoc)
-     * @see LogDAO#addEntry(String) 
+
+    /**
+     * What {@code addEntry()} does when the ring buffer is full.
+     */
+    public enum BackpressurePolicy {
+        BLOCK, DROP, SAMPLE
+    }
+
+    private final RingBuffer<Log> ring;
+    private final BackpressurePolicy policy;
+    private final int batchSize;
+    private final long flushInterval;
+    private final int sampleRate;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();  // entries that found the ring full
+    private final AtomicLong written = new AtomicLong();
+    // Entries published before this position are written without waiting for the timer.
+    private final AtomicLong flushTarget = new AtomicLong();
+
+    private volatile Thread flusher;
+    private volatile boolean running;
+
+    /**
+     * Creates a log DAO with a ring of 8192 entries that blocks when full and
+     * flushes every 1000 entries or 200 milliseconds.
+     */
+    public MySQLLogDAO() {
+        this(8192, BackpressurePolicy.BLOCK, 1000, 200, 10);
+    }
+
+    /**
+     * @param capacity      the number of entries the ring can hold, rounded up to a power of two.
+     * @param policy        what {@code addEntry()} does when the ring is full.
+     * @param batchSize     the maximum number of entries inserted per batch.
+     * @param flushInterval the maximum milliseconds an entry waits in the ring.
+     * @param sampleRate    with the {@code SAMPLE} policy, one entry out of this many is kept
+     *                      while the ring is full.
+     */
+    public MySQLLogDAO(int capacity, BackpressurePolicy policy, int batchSize, long flushInterval,
+                       int sampleRate) {
+        this.ring = new RingBuffer<Log>(capacity);
+        this.policy = policy;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    /**
+     * Publishes a log entry, timestamped now, to be written to the database in the
+     * background.
+     *
+     * @param message the message of the log entry.
+     * @see LogDAO#addEntry(String)
      */
     @Override
     public void addEntry(String message) {
-        // Not implemented
-        // Get current time and log message to database
+        Log entry = new Log();
+        entry.setDate(new Date());
+        entry.setMessage(message);
+
+        if (ring.offer(entry)) {
+            startFlusher();
+            // Wake the flusher up once a full batch is waiting, without waiting for the timer.
+            if (ring.size() == batchSize)
+                LockSupport.unpark(flusher);
+            return;
+        }
+
+        startFlusher();
+        long attempt = rejected.incrementAndGet();
+        if (policy == BackpressurePolicy.DROP
+                || (policy == BackpressurePolicy.SAMPLE && attempt % sampleRate != 0)) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        while (!ring.offer(entry)) {
+            LockSupport.unpark(flusher);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
     }
 
-    /*
-     *(non-Javadoc)
+    /**
+     * Retrieves the latest log entries from the database. Entries still waiting in the
+     * ring are flushed first, so every entry added before this call is returned.
+     *
+     * @param number the maximum number of entries to return.
+     * @return the latest {@code number} entries, newest first.
+     * @throws IllegalStateException if a database access error occurs.
      * @see LogDAO#getEntries(int)
      */
     @Override
     public List<Log> getEntries(int number) {
-        // Not implemented. Get latest "number" log messages.
-        return null;
+        flush();
+
+        List<Log> entries = new ArrayList<Log>();
+
+        try (Connection conn = Database.getInstance().getReadConnection()) {
+            PreparedStatement selectStatement = conn
+                    .prepareStatement("SELECT id, date, message FROM log ORDER BY id DESC LIMIT ?");
+            selectStatement.setInt(1, number);
+
+            ResultSet results = selectStatement.executeQuery();
+            while (results.next()) {
+                Log entry = new Log();
+                entry.setId(results.getInt("id"));
+                entry.setDate(new Date(results.getTimestamp("date").getTime()));
+                entry.setMessage(results.getString("message"));
+                entries.add(entry);
+            }
+
+            results.close();
+            selectStatement.close();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Can't read log entries", e);
+        }
+        return entries;
     }
 
-    // Maybe no need for update or delete in this case.
+    /**
+     * Waits until every entry published before this call has been handed to the
+     * database (or dropped because the database failed).
+     */
+    public void flush() {
+        long target = ring.published();
+        flushTarget.accumulateAndGet(target, Math::max);
+        while (written.get() < target && running) {
+            LockSupport.unpark(flusher);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Flushes the pending entries and stops the flusher thread. Called by
+     * {@code DAOFactory.close()} before the database is disconnected, since the flusher
+     * is a daemon thread that would otherwise lose the entries still in the ring.
+     */
+    public synchronized void shutdown() {
+        flush();
+        running = false;
+        Thread thread = flusher;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flusher = null;
+    }
+
+    /**
+     * @return the number of entries dropped because the ring was full.
+     */
+    public long getDroppedEntries() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of entries waiting in the ring.
+     */
+    public int getPendingEntries() {
+        return ring.size();
+    }
+
+    // Starts the flusher thread on the first entry.
+    private void startFlusher() {
+        if (flusher != null)
+            return;
+
+        synchronized (this) {
+            if (flusher != null)
+                return;
+            running = true;
+            Thread thread = new Thread(this::runFlusher, "audit-log-flusher");
+            thread.setDaemon(true);
+            flusher = thread;
+            thread.start();
+        }
+    }
+
+    private void runFlusher() {
+        try {
+            flushUntilStopped();
+        } finally {
+            // Should the flusher ever die, flush() must not wait for it, and the next
+            // entry starts a new one. No lock: shutdown() holds it while joining this thread.
+            if (flusher == Thread.currentThread()) {
+                running = false;
+                flusher = null;
+            }
+        }
+    }
+
+    private void flushUntilStopped() {
+        List<Log> batch = new ArrayList<Log>(batchSize);
+        long lastFlush = System.nanoTime();
+        long interval = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+
+        while (running || ring.size() > 0) {
+            ring.drainTo(batch, batchSize - batch.size());
+
+            boolean due = System.nanoTime() - lastFlush >= interval
+                    || !running || written.get() < flushTarget.get();
+            if (batch.size() >= batchSize || (due && !batch.isEmpty())) {
+                insert(batch);
+                written.addAndGet(batch.size());
+                batch.clear();
+                lastFlush = System.nanoTime();
+            } else if (batch.isEmpty() && due) {
+                lastFlush = System.nanoTime();
+            } else {
+                // Sleep until the next flush is due; producers wake us up earlier when needed.
+                LockSupport.parkNanos(interval - (System.nanoTime() - lastFlush));
+            }
+        }
+    }
+
+    // Package-private so that tests can record the batches without a database.
+    void insert(List<Log> batch) {
+        try (Connection conn = Database.getInstance().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement prepStatement = conn
+                        .prepareStatement("INSERT INTO log (date, message) values (?, ?)");
+
+                for (Log entry : batch) {
+                    prepStatement.setTimestamp(1, new Timestamp(entry.getDate().getTime()));
+                    prepStatement.setString(2, entry.getMessage());
+                    prepStatement.addBatch();
+                }
+                prepStatement.executeBatch();
+                conn.commit();
+                Database.getInstance().markWrite();
+                prepStatement.close();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            // The entries are lost, but the flusher must keep running for the next ones.
+            System.out.println("Can't write " + batch.size() + " log entries: " + e.getMessage());
+        }
+    }
 }
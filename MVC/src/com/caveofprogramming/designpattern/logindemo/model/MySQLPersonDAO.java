@@ -2,7 +2,16 @@ package com.caveofprogramming.designpattern.logindemo.model;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <p>This class interacts with a MySQL database and manage the transfer of data to and from
@@ -16,12 +25,44 @@ import java.util.List;
  * interface. Only the method implementation details would need to be change for a different
  * the database to be used.</p>
  * <p> For multiple databases a DAO factory helps you to manage multiple DAOs.</p>
+ * <p>Every method prepares its SQL with {@code prepareStatement()} and closes the statement
+ * afterwards. The pooled connections cache those statements per connection, so closing
+ * them only hands them back to the cache and the SQL is not parsed again on the next call.</p>
+ * <p>Reads borrow their connection with {@code getReadConnection()}, so they can be served
+ * by a read replica; writes, and the reads they depend on, use the primary database.</p>
  */
 public class MySQLPersonDAO implements PersonDAO {
 
+    // Number of rows sent to the database, and committed, in each batch.
+    private volatile int batchSize = 1000;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        this.batchSize = batchSize;
+    }
+
+    // Number of rows fetched from the server-side cursor at a time by streamPeople().
+    private volatile int fetchSize = 1000;
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1)
+            throw new IllegalArgumentException("fetchSize must be at least 1");
+        this.fetchSize = fetchSize;
+    }
+
     /**
      * This method receives a {@code Person} object and adds it to the
-     * database.
+     * database. The id generated by the database is written back into
+     * the given {@code person}.
      *
      * @param person {@code Person} object that contains the data of a person.
      * @return either (1) the row count for SQL Data Manipulation Language (DML)
@@ -30,19 +71,50 @@ public class MySQLPersonDAO implements PersonDAO {
      */
     @Override
     public int addPerson(Person person) throws SQLException {
-        Connection conn = Database.getInstance().getConnection(); // from the Singleton pattern.
+        // The connection is borrowed from the pool and returned to it on close.
+        try (Connection conn = Database.getInstance().getConnection()) { // from the Singleton pattern.
 
-        PreparedStatement p = conn
-                .prepareStatement("INSERT INTO people (name, password) values (?, ?)");
+            PreparedStatement p = conn
+                    .prepareStatement("INSERT INTO people (name, password) values (?, ?)",
+                            Statement.RETURN_GENERATED_KEYS);
 
-        p.setString(1, person.getName());
-        p.setString(2, person.getPassword());
+            p.setString(1, person.getName());
+            p.setString(2, person.getPassword());
 
-        int updated = p.executeUpdate();
+            int updated = p.executeUpdate();
+            Database.getInstance().markWrite();
 
-        p.close();
+            // Read back the autoincrement id, so the caller does not need to reload the row.
+            ResultSet keys = p.getGeneratedKeys();
+            if (keys.next())
+                person.setId(keys.getInt(1));
+            keys.close();
 
-        return updated;
+            p.close();
+
+            return updated;
+        }
+    }
+
+    /**
+     * Adds all the given people to the database using JDBC batches. The rows are
+     * sent in chunks of {@code batchSize}, and each chunk is committed in its own
+     * transaction, so a failure only rolls back the chunk that failed. The ids
+     * generated by the database are written back into the given {@code people}.
+     *
+     * @param people the people to be added.
+     * @return the number of rows added.
+     * @throws SQLException if a database access error occurs or this method
+     * is called on a closed connection
+     * @see PersonDAO#addPeople(Collection)
+     */
+    @Override
+    public int addPeople(Collection<Person> people) throws SQLException {
+        return executeInBatches("INSERT INTO people (name, password) values (?, ?)", people, true, null,
+                (statement, person) -> {
+                    statement.setString(1, person.getName());
+                    statement.setString(2, person.getPassword());
+                });
     }
 
     /**
@@ -55,34 +127,31 @@ public class MySQLPersonDAO implements PersonDAO {
      */
     @Override
     public Person getPerson(int id) throws SQLException {
-        Connection conn = Database.getInstance().getConnection();
+        try (Connection conn = Database.getInstance().getReadConnection()) {
 
-        String sql = "SELECT id, name, password from people where id=? order by id";
-        PreparedStatement selectStatement = conn.prepareStatement(sql);
+            String sql = "SELECT id, name, password, version from people where id=? order by id";
+            PreparedStatement selectStatement = conn.prepareStatement(sql);
 
-        selectStatement.setInt(1, id);
+            selectStatement.setInt(1, id);
 
-        ResultSet results = selectStatement.executeQuery();
+            ResultSet results = selectStatement.executeQuery();
 
-        Person person = null;
+            Person person = null;
 
-        if (results.next()) {
-            person = new Person(
-                    id,
-                    results.getString("name"),
-                    results.getString("password")
-            );
-        }
+            if (results.next())
+                person = readPerson(results);
 
-        results.close();
-        selectStatement.close();
-        return person;
+            results.close();
+            selectStatement.close();
+            return person;
+        }
     }
 
     /**
      * Retrieves a list of all people from the database, order by id.
      * This approach is only suitable for very small databases. Typically, you will use
-     * a {@code find()} method to search for specific objects in the database.
+     * a {@code find()} method to search for specific objects in the database, or
+     * {@code streamPeople()} to go through a big table without loading it in memory.
      *
      * @return returns a list with all the people in the database order by id.
      * @throws SQLException if a database access error occurs or this method
@@ -94,51 +163,454 @@ public class MySQLPersonDAO implements PersonDAO {
 
         List<Person> people = new ArrayList<Person>();
 
-        Connection conn = Database.getInstance().getConnection();
+        try (Connection conn = Database.getInstance().getReadConnection()) {
+
+            String sql = "select id, name, password, version from people order by id";
+            PreparedStatement selectStatement = conn.prepareStatement(sql);
+
+            ResultSet results = selectStatement.executeQuery();
+
+            while (results.next())
+                people.add(readPerson(results));
+
+            results.close();
+            selectStatement.close();
+        }
+        return people;
+    }
+
+    /**
+     * Streams all the people in the database, ordered by id. Rows are read through a
+     * server-side cursor, {@code fetchSize} rows at a time, so memory use stays the same
+     * however big the table is. The stream holds a pooled connection until it is closed.
+     * <p>
+     * A {@code SQLException} thrown while the stream is being consumed is rethrown
+     * wrapped in an {@code IllegalStateException}.
+     * </p>
+     *
+     * @return a stream of all the people in the database, which must be closed.
+     * @throws SQLException if a database access error occurs or this method
+     * is called on a closed connection
+     * @see PersonDAO#streamPeople()
+     */
+    @Override
+    public Stream<Person> streamPeople() throws SQLException {
+        Connection conn = Database.getInstance().getReadConnection();
+
+        try {
+            String sql = "select id, name, password, version from people order by id";
+            PreparedStatement selectStatement = conn.prepareStatement(
+                    sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            selectStatement.setFetchSize(fetchSize);
+
+            ResultSet results = selectStatement.executeQuery();
+
+            Spliterator<Person> people = new Spliterators.AbstractSpliterator<Person>(
+                    Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super Person> action) {
+                    try {
+                        if (!results.next())
+                            return false;
+                        action.accept(readPerson(results));
+                        return true;
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("Error reading people from the database", e);
+                    }
+                }
+            };
+
+            return StreamSupport.stream(people, false).onClose(() -> {
+                try {
+                    results.close();
+                    selectStatement.close();
+                    conn.close();
+                } catch (SQLException e) {
+                    System.out.println("Can't close connection");
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves a page of people ordered by id using keyset pagination: the query
+     * seeks straight to {@code lastId} through the primary key, so every page costs
+     * the same no matter how deep into the table it is.
+     *
+     * @param lastId the id of the last person of the previous page, or 0 for the first page.
+     * @param limit  the maximum number of people to return.
+     * @return up to {@code limit} people with an id greater than {@code lastId}.
+     * @throws SQLException if a database access error occurs or this method
+     * is called on a closed connection
+     * @see PersonDAO#getPeopleAfter(int, int)
+     */
+    @Override
+    public List<Person> getPeopleAfter(int lastId, int limit) throws SQLException {
+        try (Connection conn = Database.getInstance().getReadConnection()) {
+
+            String sql = "SELECT id, name, password, version from people where id > ? order by id limit ?";
+            PreparedStatement selectStatement = conn.prepareStatement(sql);
+
+            selectStatement.setInt(1, lastId);
+            selectStatement.setInt(2, limit);
+
+            List<Person> people = readPeople(selectStatement);
+            selectStatement.close();
+            return people;
+        }
+    }
 
-        String sql = "select id, name, password from people order by id";
-        Statement selectStatement = conn.createStatement();
+    /**
+     * Retrieves a page of people ordered by id with {@code LIMIT ? OFFSET ?}. MySQL still
+     * walks the primary key over the skipped rows, so deep pages cost more than with
+     * {@code getPeopleAfter()}; this method is for jumping to an arbitrary position.
+     *
+     * @param offset the number of people to skip.
+     * @param limit  the maximum number of people to return.
+     * @return up to {@code limit} people, starting at position {@code offset}.
+     * @throws SQLException if a database access error occurs or this method
+     * is called on a closed connection
+     * @see PersonDAO#getPeoplePage(int, int)
+     */
+    @Override
+    public List<Person> getPeoplePage(int offset, int limit) throws SQLException {
+        try (Connection conn = Database.getInstance().getReadConnection()) {
 
-        ResultSet results = selectStatement.executeQuery(sql);
+            String sql = "SELECT id, name, password, version from people order by id limit ? offset ?";
+            PreparedStatement selectStatement = conn.prepareStatement(sql);
 
-        while (results.next()) {
-            int id = results.getInt("id");
-            String name = results.getString("name");
-            String password = results.getString("password");
+            selectStatement.setInt(1, limit);
+            selectStatement.setInt(2, offset);
 
-            Person person = new Person(id, name, password);
-            people.add(person);
+            List<Person> people = readPeople(selectStatement);
+            selectStatement.close();
+            return people;
         }
+    }
+
+    /**
+     * Counts the rows of the {@code people} table.
+     *
+     * @return the number of people in the database.
+     * @throws SQLException if a database access error occurs or this method
+     * is called on a closed connection
+     * @see PersonDAO#countPeople()
+     */
+    @Override
+    public int countPeople() throws SQLException {
+        try (Connection conn = Database.getInstance().getReadConnection()) {
+
+            PreparedStatement countStatement = conn.prepareStatement("SELECT count(*) from people");
+            ResultSet results = countStatement.executeQuery();
 
+            int count = results.next() ? results.getInt(1) : 0;
+            results.close();
+            countStatement.close();
+            return count;
+        }
+    }
+
+    /**
+     * Finds the people whose name starts with the given prefix, ordered by name.
+     * The {@code LIKE 'prefix%'} condition is answered with a range scan on the
+     * {@code idx_people_name} index.
+     *
+     * @param prefix the beginning of the name.
+     * @param limit  the maximum number of people to return.
+     * @return up to {@code limit} people whose name starts with {@code prefix}.
+     * @throws SQLException if a database access error occurs or this method
+     * is called on a closed connection
+     * @see PersonDAO#findByName(String, int)
+     */
+    @Override
+    public List<Person> findByName(String prefix, int limit) throws SQLException {
+        try (Connection conn = Database.getInstance().getReadConnection()) {
+
+            String sql = "SELECT id, name, password, version from people where name like ? order by name, id limit ?";
+            PreparedStatement selectStatement = conn.prepareStatement(sql);
+
+            // Wildcards typed by the user must match literally.
+            String escaped = prefix
+                    .replace("\\", "\\\\")
+                    .replace("%", "\\%")
+                    .replace("_", "\\_");
+            selectStatement.setString(1, escaped + "%");
+            selectStatement.setInt(2, limit);
+
+            List<Person> people = readPeople(selectStatement);
+            selectStatement.close();
+            return people;
+        }
+    }
+
+    /**
+     * Retrieves what changed in the {@code people} table since the given watermark.
+     * Triggers stamp every inserted or updated row with the next number of the
+     * {@code people_sequence} counter in its {@code seq} column, and record every delete
+     * in {@code people_tombstones} the same way, so the changes are two range scans on the
+     * {@code seq} indexes. The counter and the rows are read in one transaction, so they
+     * come from the same snapshot.
+     * <p>
+     * The counter row is locked by the triggers until the writing transaction commits,
+     * so rows become visible in {@code seq} order and a watermark never skips a row
+     * committed later with a smaller number.
+     * </p>
+     * When the watermark is 0, older than the tombstones purged so far, or ahead of the
+     * counter, as after the database was restored, the whole table is returned as a snapshot.
+     *
+     * @param watermark the watermark of the previous result, or 0.
+     * @return the people changed and the ids of the people deleted since {@code watermark}.
+     * @throws SQLException if a database access error occurs or this method
+     * is called on a closed connection
+     * @see PersonDAO#getChangedSince(long)
+     */
+    @Override
+    public PeopleChanges getChangedSince(long watermark) throws SQLException {
+        try (Connection conn = Database.getInstance().getReadConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                PeopleChanges changes = readChangedSince(conn, watermark);
+                conn.commit();
+                return changes;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    // Reads the changes in the transaction of getChangedSince(), so the sequence and the
+    // rows are read from the same snapshot.
+    private PeopleChanges readChangedSince(Connection conn, long watermark) throws SQLException {
+        PreparedStatement sequenceStatement = conn.prepareStatement(
+                "SELECT value, pruned from people_sequence where id=1");
+        ResultSet results = sequenceStatement.executeQuery();
+        long current = 0;
+        long pruned = 0;
+        if (results.next()) {
+            current = results.getLong("value");
+            pruned = results.getLong("pruned");
+        }
         results.close();
+        sequenceStatement.close();
+
+        List<Person> changed = new ArrayList<Person>();
+        List<Integer> deletedIds = new ArrayList<Integer>();
+        if (watermark == Long.MAX_VALUE || (watermark == current && watermark != 0))
+            return new PeopleChanges(changed, deletedIds, current, false);
+
+        // A watermark ahead of the sequence comes from a database that was reset or
+        // restored since, or from a replica further ahead than this one: the changes
+        // after it cannot be told apart, so the whole table is sent again.
+        if (watermark == 0 || watermark < pruned || watermark > current) {
+            PreparedStatement selectStatement = conn.prepareStatement(
+                    "SELECT id, name, password, version from people order by id");
+            changed = readPeople(selectStatement);
+            selectStatement.close();
+            return new PeopleChanges(changed, deletedIds, current, true);
+        }
+
+        PreparedStatement selectStatement = conn.prepareStatement(
+                "SELECT id, name, password, version from people where seq > ? and seq <= ? order by seq");
+        selectStatement.setLong(1, watermark);
+        selectStatement.setLong(2, current);
+        changed = readPeople(selectStatement);
         selectStatement.close();
-        return people;
+
+        PreparedStatement tombstoneStatement = conn.prepareStatement(
+                "SELECT id from people_tombstones where seq > ? and seq <= ? order by seq");
+        tombstoneStatement.setLong(1, watermark);
+        tombstoneStatement.setLong(2, current);
+        results = tombstoneStatement.executeQuery();
+        while (results.next())
+            deletedIds.add(results.getInt("id"));
+        results.close();
+        tombstoneStatement.close();
+
+        return new PeopleChanges(changed, deletedIds, current, false);
     }
 
     /**
      * Updates the record of the specified {@code Person} in the {@code People} table.
+     * The row is only updated if its version is still the version of {@code person},
+     * and the version is incremented, in the database and in {@code person}. No lock is
+     * taken: an edit made in the meantime by someone else is detected, not prevented.
      *
      * @param person The {@code Person} object holding the data to be updated in the database.
      * @return either (1) the row count for SQL Data Manipulation Language (DML) statements
      * or (2) 0 for SQL statements that return nothing
+     * @throws OptimisticLockException if the row was changed since {@code person} was read.
      * @throws SQLException if a database access error occurs or this method
      * is called on a closed connection
      * @see PersonDAO#updatePerson(Person)
      */
     @Override
     public int updatePerson(Person person) throws SQLException {
-        Connection conn = Database.getInstance().getConnection();
+        try (Connection conn = Database.getInstance().getConnection()) {
+
+            PreparedStatement prepStatement = conn
+                    .prepareStatement(UPDATE_SQL);
+            bindUpdate(prepStatement, person);
+
+            int updated = prepStatement.executeUpdate();
+            prepStatement.close();
+            Database.getInstance().markWrite();
+
+            if (updated > 0) {
+                person.setVersion(person.getVersion() + 1);
+                return updated;
+            }
+            // Nothing matched: either the row is gone, or it has another version.
+            throwConflicts(selectRows(conn, List.of(person)), List.of(person));
+            return 0;
+        }
+    }
+
+    /**
+     * Updates the records of all the given people using JDBC batches, in chunks of
+     * {@code batchSize} rows with one transaction per chunk. Like {@code updatePerson()},
+     * each row is only updated if its version has not changed. The people whose row
+     * changed are reported together once all the others are written.
+     *
+     * @param people the people holding the data to be updated in the database.
+     * @return the number of rows updated.
+     * @throws OptimisticLockException if some rows were changed since their people were read.
+     * @throws SQLException if a database access error occurs or this method
+     * is called on a closed connection
+     * @see PersonDAO#updatePeople(Collection)
+     */
+    @Override
+    public int updatePeople(Collection<Person> people) throws SQLException {
+        List<Person> notUpdated = new ArrayList<Person>();
+        int updated = executeInBatches(UPDATE_SQL, people, false, notUpdated, this::bindUpdate);
+
+        if (!notUpdated.isEmpty()) {
+            try (Connection conn = Database.getInstance().getConnection()) {
+                throwConflicts(selectRows(conn, notUpdated), notUpdated);
+            }
+        }
+        return updated;
+    }
 
-        PreparedStatement prepStatement = conn
-                .prepareStatement("UPDATE people SET name=?, password=? where id=?");
+    // Only matches the row if nobody changed it since it was read, and bumps its version.
+    private static final String UPDATE_SQL =
+            "UPDATE people SET name=?, password=?, version=version+1 where id=? and version=?";
 
-        prepStatement.setString(1, person.getName());
-        prepStatement.setString(2, person.getPassword());
-        prepStatement.setInt(3, person.getId());
+    private void bindUpdate(PreparedStatement statement, Person person) throws SQLException {
+        statement.setString(1, person.getName());
+        statement.setString(2, person.getPassword());
+        statement.setInt(3, person.getId());
+        statement.setInt(4, person.getVersion());
+    }
 
-        int updated = prepStatement.executeUpdate();
-        prepStatement.close();
-        return updated;
+    // Throws the people that still have a row as conflicts; people without a row were
+    // deleted, which updatePerson() reports as 0 rows updated, not as a conflict.
+    private static void throwConflicts(Map<Integer, Person> rows, List<Person> notUpdated)
+            throws OptimisticLockException {
+        List<OptimisticLockException.Conflict> conflicts = new ArrayList<OptimisticLockException.Conflict>();
+        for (Person person : notUpdated) {
+            Person row = rows.get(person.getId());
+            if (row != null)
+                conflicts.add(new OptimisticLockException.Conflict(person, row));
+        }
+        if (!conflicts.isEmpty())
+            throw new OptimisticLockException(conflicts);
+    }
+
+    /**
+     * Writes the given people with multi-row {@code INSERT ... ON DUPLICATE KEY UPDATE}
+     * statements of up to {@code batchSize} rows, each chunk in its own transaction, so
+     * new and changed people take a few round trips per chunk instead of one
+     * {@code INSERT} or {@code UPDATE} per row.
+     * <p>
+     * An existing row is only updated if its version is still the version of the
+     * person; otherwise the statement leaves it as it is. MySQL only reports one
+     * affected-row count per statement, so the rows are read back in the same
+     * transaction to tell which people were inserted, updated or in conflict. The upsert
+     * has already locked those rows, so no other lock is taken. People without an id can
+     * never hit a duplicate key, so they are sent as a plain batched {@code INSERT}, whose
+     * generated keys line up with them. Ids and versions are written back once their
+     * chunk is committed.
+     * </p>
+     *
+     * @param people the people to be written.
+     * @return which people were inserted and which were updated.
+     * @throws OptimisticLockException if some rows were changed since their people were
+     * read. Those people are not written; all the others are.
+     * @throws SQLException if a database access error occurs or this method
+     * is called on a closed connection
+     * @see PersonDAO#upsertPeople(Collection)
+     */
+    @Override
+    public UpsertResult upsertPeople(Collection<Person> people) throws SQLException {
+        List<Person> inserted = new ArrayList<Person>();
+        List<Person> updated = new ArrayList<Person>();
+        List<OptimisticLockException.Conflict> conflicts = new ArrayList<OptimisticLockException.Conflict>();
+        if (people.isEmpty())
+            return new UpsertResult(inserted, updated);
+
+        try (Connection conn = Database.getInstance().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int size = batchSize;
+                List<Person> chunk = new ArrayList<Person>(Math.min(size, people.size()));
+                for (Person person : people) {
+                    chunk.add(person);
+                    if (chunk.size() == size) {
+                        retryDeadlocks(conn, () -> upsertChunk(conn, chunk, inserted, updated, conflicts));
+                        chunk.clear();
+                    }
+                }
+                if (!chunk.isEmpty())
+                    retryDeadlocks(conn, () -> upsertChunk(conn, chunk, inserted, updated, conflicts));
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        if (!conflicts.isEmpty())
+            throw new OptimisticLockException(conflicts);
+        return new UpsertResult(inserted, updated);
+    }
+
+    /**
+     * Reserves a block of ids from the single row of the {@code people_ids} table. The
+     * {@code UPDATE} locks the row and moves it past the block in one statement, and
+     * {@code LAST_INSERT_ID(expr)} hands the new value back to this connection only, so
+     * concurrent callers, in any process, always get different blocks.
+     *
+     * @param count the number of ids to reserve.
+     * @return the first id of the block.
+     * @throws SQLException if a database access error occurs or this method
+     * is called on a closed connection
+     * @see PersonDAO#reserveIds(int)
+     */
+    @Override
+    public int reserveIds(int count) throws SQLException {
+        try (Connection conn = Database.getInstance().getConnection()) {
+
+            PreparedStatement updateStatement = conn.prepareStatement(
+                    "UPDATE people_ids SET next_id=LAST_INSERT_ID(next_id + ?) where id=1");
+            updateStatement.setInt(1, count);
+            if (updateStatement.executeUpdate() == 0)
+                throw new SQLException("The people_ids table has no row");
+            updateStatement.close();
+
+            PreparedStatement selectStatement = conn.prepareStatement("SELECT LAST_INSERT_ID()");
+            ResultSet results = selectStatement.executeQuery();
+            results.next();
+            int next = results.getInt(1);
+            results.close();
+            selectStatement.close();
+            return next - count;
+        }
     }
 
     /**
@@ -151,16 +623,18 @@ public class MySQLPersonDAO implements PersonDAO {
      */
     @Override
     public int deletePerson(int id) throws SQLException {
-        Connection conn = Database.getInstance().getConnection();
+        try (Connection conn = Database.getInstance().getConnection()) {
 
-        PreparedStatement prepStatement = conn
-                .prepareStatement("DELETE from people WHERE id=?");
+            PreparedStatement prepStatement = conn
+                    .prepareStatement("DELETE from people WHERE id=?");
 
-        prepStatement.setInt(1, id);
+            prepStatement.setInt(1, id);
 
-        int deleted = prepStatement.executeUpdate();
-        prepStatement.close();
-        return deleted;
+            int deleted = prepStatement.executeUpdate();
+            prepStatement.close();
+            Database.getInstance().markWrite();
+            return deleted;
+        }
     }
 
     /**
@@ -174,13 +648,270 @@ public class MySQLPersonDAO implements PersonDAO {
      */
     @Override
     public int deleteAll() throws SQLException {
-        Connection conn = Database.getInstance().getConnection();
+        try (Connection conn = Database.getInstance().getConnection()) {
 
-        PreparedStatement prepStatement = conn
-                .prepareStatement("DELETE from people");
+            PreparedStatement prepStatement = conn
+                    .prepareStatement("DELETE from people");
 
-        int deleted = prepStatement.executeUpdate();
+            int deleted = prepStatement.executeUpdate();
+            prepStatement.close();
+            Database.getInstance().markWrite();
+            return deleted;
+        }
+    }
+
+    // Runs a query and reads every row of its results as a Person.
+    private List<Person> readPeople(PreparedStatement selectStatement) throws SQLException {
+        List<Person> people = new ArrayList<Person>();
+
+        ResultSet results = selectStatement.executeQuery();
+        while (results.next())
+            people.add(readPerson(results));
+        results.close();
+        return people;
+    }
+
+    private static Person readPerson(ResultSet results) throws SQLException {
+        return new Person(
+                results.getInt("id"),
+                results.getString("name"),
+                results.getString("password"),
+                results.getInt("version")
+        );
+    }
+
+    // Reads the current rows of the given people in one query, by id.
+    private Map<Integer, Person> selectRows(Connection conn, List<Person> people) throws SQLException {
+        Map<Integer, Person> rows = new HashMap<Integer, Person>();
+        if (people.isEmpty())
+            return rows;
+
+        PreparedStatement selectStatement = conn.prepareStatement(
+                "SELECT id, name, password, version from people where id in ("
+                        + placeholders(people.size(), "?") + ")");
+        for (int i = 0; i < people.size(); i++)
+            selectStatement.setInt(i + 1, people.get(i).getId());
+
+        for (Person row : readPeople(selectStatement))
+            rows.put(row.getId(), row);
+        selectStatement.close();
+        return rows;
+    }
+
+    // Upserts one chunk in one transaction and sorts its people into inserted, updated and
+    // conflicts. Nothing is changed before the commit, so a chunk rolled back can be sent again.
+    private int upsertChunk(Connection conn, List<Person> chunk, List<Person> inserted,
+                             List<Person> updated, List<OptimisticLockException.Conflict> conflicts)
+            throws SQLException {
+        List<Person> newPeople = new ArrayList<Person>();
+        List<Person> savedPeople = new ArrayList<Person>();
+        for (Person person : chunk) {
+            if (person.getId() == 0)
+                newPeople.add(person);
+            else
+                savedPeople.add(person);
+        }
+
+        upsertRows(conn, savedPeople);
+        int[] ids = insertRows(conn, newPeople);
+        // The first read of the transaction, so it sees the rows as the upsert left them.
+        Map<Integer, Person> rows = selectRows(conn, savedPeople);
+        conn.commit();
+        Database.getInstance().markWrite();
+
+        for (Person person : chunk) {
+            Person row = person.getId() == 0 ? null : rows.get(person.getId());
+            if (row == null || row.getVersion() == person.getVersion()) {
+                // New people, and missing rows, which are inserted with the version of the person.
+                inserted.add(person);
+            } else if (row.getVersion() == person.getVersion() + 1 && row.equals(person)) {
+                person.setVersion(row.getVersion());
+                updated.add(person);
+            } else {
+                conflicts.add(new OptimisticLockException.Conflict(person, row));
+            }
+        }
+        for (int i = 0; i < newPeople.size(); i++) {
+            newPeople.get(i).setId(ids[i]);
+            newPeople.get(i).setVersion(0);
+        }
+        return chunk.size();
+    }
+
+    // Inserts people without an id with the plain batched INSERT of addPeople() and returns
+    // the ids generated for them. An upsert is a mixed-mode insert, whose autoincrement
+    // values need not be consecutive, so its generated keys could not be trusted.
+    private int[] insertRows(Connection conn, List<Person> people) throws SQLException {
+        int[] ids = new int[people.size()];
+        if (people.isEmpty())
+            return ids;
+
+        PreparedStatement prepStatement = conn.prepareStatement(
+                "INSERT INTO people (name, password) values (?, ?)", Statement.RETURN_GENERATED_KEYS);
+        for (Person person : people) {
+            prepStatement.setString(1, person.getName());
+            prepStatement.setString(2, person.getPassword());
+            prepStatement.addBatch();
+        }
+        prepStatement.executeBatch();
+
+        // Keys come back in the same order the rows were added to the batch.
+        ResultSet keys = prepStatement.getGeneratedKeys();
+        for (int i = 0; i < ids.length && keys.next(); i++)
+            ids[i] = keys.getInt(1);
+        keys.close();
+        prepStatement.close();
+        return ids;
+    }
+
+    // Sends people who have an id as one multi-row upsert. An existing row is only changed
+    // if it has the version of the person. The assignments run from left to right, so the
+    // version must be compared before it is incremented.
+    private void upsertRows(Connection conn, List<Person> people) throws SQLException {
+        if (people.isEmpty())
+            return;
+
+        String sql = "INSERT INTO people (id, name, password, version) values "
+                + placeholders(people.size(), "(?, ?, ?, ?)")
+                + " ON DUPLICATE KEY UPDATE"
+                + " name=IF(version=VALUES(version), VALUES(name), name),"
+                + " password=IF(version=VALUES(version), VALUES(password), password),"
+                + " version=IF(version=VALUES(version), version+1, version)";
+        PreparedStatement prepStatement = conn.prepareStatement(sql);
+
+        int parameter = 1;
+        for (Person person : people) {
+            prepStatement.setInt(parameter++, person.getId());
+            prepStatement.setString(parameter++, person.getName());
+            prepStatement.setString(parameter++, person.getPassword());
+            prepStatement.setInt(parameter++, person.getVersion());
+        }
+        prepStatement.executeUpdate();
         prepStatement.close();
-        return deleted;
+    }
+
+    // One group of placeholders per row, e.g. "(?, ?, ?), (?, ?, ?)". Full chunks always
+    // produce the same SQL, so their statement is taken from the statement cache.
+    private static String placeholders(int rows, String group) {
+        return String.join(", ", Collections.nCopies(rows, group));
+    }
+
+    // Sets the parameters of a statement from a Person before it is added to a batch.
+    private interface PersonBinder {
+        void bind(PreparedStatement statement, Person person) throws SQLException;
+    }
+
+    // Runs the SQL once per person as JDBC batches of batchSize rows, committing each chunk.
+    // When generatedKeys is true, the ids created by the database are set on the people.
+    // When notUpdated is given, the SQL is a versioned update: the people whose row was not
+    // matched are added to it, and the others get the incremented version.
+    private int executeInBatches(String sql, Collection<Person> people, boolean generatedKeys,
+                                 List<Person> notUpdated, PersonBinder binder) throws SQLException {
+        if (people.isEmpty())
+            return 0;
+
+        int updated = 0;
+
+        try (Connection conn = Database.getInstance().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement prepStatement = generatedKeys
+                        ? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                        : conn.prepareStatement(sql);
+
+                int size = batchSize;
+                List<Person> pending = new ArrayList<Person>(Math.min(size, people.size()));
+                for (Person person : people) {
+                    pending.add(person);
+
+                    if (pending.size() == size) {
+                        updated += retryDeadlocks(conn, () -> commitBatch(conn, prepStatement, pending, binder,
+                                generatedKeys, notUpdated));
+                        pending.clear();
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    updated += retryDeadlocks(conn, () -> commitBatch(conn, prepStatement, pending, binder,
+                            generatedKeys, notUpdated));
+                }
+
+                prepStatement.close();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return updated;
+    }
+
+    // Sends one batch in one transaction. The people are only changed once it is committed,
+    // so a batch rolled back can be sent again.
+    private int commitBatch(Connection conn, PreparedStatement prepStatement, List<Person> batch,
+                            PersonBinder binder, boolean generatedKeys, List<Person> notUpdated)
+            throws SQLException {
+        prepStatement.clearBatch();
+        for (Person person : batch) {
+            binder.bind(prepStatement, person);
+            prepStatement.addBatch();
+        }
+        int[] counts = prepStatement.executeBatch();
+
+        int[] ids = new int[generatedKeys ? batch.size() : 0];
+        if (generatedKeys) {
+            // Keys come back in the same order the rows were added to the batch.
+            ResultSet keys = prepStatement.getGeneratedKeys();
+            for (int i = 0; i < ids.length && keys.next(); i++)
+                ids[i] = keys.getInt(1);
+            keys.close();
+        }
+
+        conn.commit();
+        Database.getInstance().markWrite();
+
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != 0)
+                batch.get(i).setId(ids[i]);
+        }
+        int updated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            // Rewritten batches report SUCCESS_NO_INFO instead of a row count.
+            int count = counts[i] == Statement.SUCCESS_NO_INFO ? 1 : counts[i];
+            updated += count;
+            if (notUpdated != null) {
+                Person person = batch.get(i);
+                if (count == 0)
+                    notUpdated.add(person);
+                else
+                    person.setVersion(person.getVersion() + 1);
+            }
+        }
+        return updated;
+    }
+
+    // How many times a chunk chosen as the victim of a deadlock is sent.
+    private static final int DEADLOCK_ATTEMPTS = 3;
+
+    // The write of one chunk, in its own transaction.
+    private interface ChunkWrite {
+        int write() throws SQLException;
+    }
+
+    // Writers deadlock now and then, since the triggers of schema.sql make every one of
+    // them lock the people_sequence row. InnoDB then rolls back the whole transaction of
+    // one of them, so its chunk is simply sent again.
+    private static int retryDeadlocks(Connection conn, ChunkWrite chunk) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return chunk.write();
+            } catch (SQLException e) {
+                // 1213 is ER_LOCK_DEADLOCK, reported with the SQL state 40001.
+                boolean deadlock = e.getErrorCode() == 1213 || "40001".equals(e.getSQLState());
+                if (!deadlock || attempt == DEADLOCK_ATTEMPTS)
+                    throw e;
+                conn.rollback();
+            }
+        }
     }
 }
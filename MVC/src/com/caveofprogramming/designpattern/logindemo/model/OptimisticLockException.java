@@ -0,0 +1,64 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Thrown by {@code PersonDAO.updatePerson()}, {@code updatePeople()} and
+ * {@code upsertPeople()} when some of the people were changed by someone else since
+ * they were read: the {@code version} of their row is no longer the {@code version}
+ * of the {@code Person}. Those people are not written; the others are.</p>
+ * This is optimistic concurrency control: no row is locked while a person is being
+ * edited, and the rare conflicting edit is detected when it is saved. Each
+ * {@link Conflict} holds both sides, so the caller can merge them and try again.
+ */
+public class OptimisticLockException extends SQLException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<Conflict> conflicts;
+
+    /**
+     * @param conflicts the people that were not written, with their current rows.
+     */
+    public OptimisticLockException(List<Conflict> conflicts) {
+        super(conflicts.size() + " people were changed by someone else");
+        this.conflicts = Collections.unmodifiableList(new ArrayList<Conflict>(conflicts));
+    }
+
+    /**
+     * @return the people that were not written, in the order they were given.
+     */
+    public List<Conflict> getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * A person that could not be written, and its row as it is now in the database.
+     */
+    public static class Conflict {
+        private final Person mine;
+        private final Person theirs;
+
+        public Conflict(Person mine, Person theirs) {
+            this.mine = mine;
+            this.theirs = theirs;
+        }
+
+        /**
+         * @return the person that was being written, unchanged.
+         */
+        public Person getMine() {
+            return mine;
+        }
+
+        /**
+         * @return a copy of the row in the database, with its current version.
+         */
+        public Person getTheirs() {
+            return theirs;
+        }
+    }
+}
@@ -2,12 +2,17 @@ package com.caveofprogramming.designpattern.logindemo.model;
 
 public class OracleDAOFactory extends DAOFactory {
     @Override
-    public PersonDAO getPersonDAO() {
+    public int getType() {
+        return ORACLE;
+    }
+
+    @Override
+    protected PersonDAO createPersonDAO() {
         return new OraclePersonDAO();
     }
 
     @Override
-    public LogDAO getLogDAO() {
+    protected LogDAO createLogDAO() {
         return new OracleLogDAO();
     }
 }
@@ -1,7 +1,9 @@
 package com.caveofprogramming.designpattern.logindemo.model;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * This class interacts with an Oracle database and manage the transfer of the data to and from
@@ -16,6 +18,11 @@ public class OraclePersonDAO implements PersonDAO{
         return 0;
     }
 
+    @Override
+    public int addPeople(Collection<Person> people) throws SQLException {
+        return 0;
+    }
+
     @Override
     public Person getPerson(int id) throws SQLException {
         return null;
@@ -26,11 +33,56 @@ public class OraclePersonDAO implements PersonDAO{
         return List.of();
     }
 
+    @Override
+    public Stream<Person> streamPeople() throws SQLException {
+        return Stream.empty();
+    }
+
+    @Override
+    public List<Person> getPeopleAfter(int lastId, int limit) throws SQLException {
+        return List.of();
+    }
+
+    @Override
+    public List<Person> getPeoplePage(int offset, int limit) throws SQLException {
+        return List.of();
+    }
+
+    @Override
+    public int countPeople() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public List<Person> findByName(String prefix, int limit) throws SQLException {
+        return List.of();
+    }
+
+    @Override
+    public PeopleChanges getChangedSince(long watermark) throws SQLException {
+        return new PeopleChanges(List.<Person>of(), List.<Integer>of(), watermark, false);
+    }
+
     @Override
     public int updatePerson(Person person) throws SQLException {
         return 0;
     }
 
+    @Override
+    public int updatePeople(Collection<Person> people) throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public UpsertResult upsertPeople(Collection<Person> people) throws SQLException {
+        return new UpsertResult(List.<Person>of(), List.<Person>of());
+    }
+
+    @Override
+    public int reserveIds(int count) throws SQLException {
+        return 0;
+    }
+
     @Override
     public int deletePerson(int id) throws SQLException {
         return 0;
@@ -0,0 +1,78 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>The result of {@code PersonDAO.getChangedSince()}: the people inserted or updated
+ * since a watermark, the ids of the people deleted since then, and the new watermark to
+ * ask from next time. Every write to the {@code people} table takes the next number of
+ * a sequence, and the watermark is the highest number the result includes, so a refresh
+ * only transfers what changed.</p>
+ * When the watermark is 0, or so old that the tombstones recording the deletes after it
+ * have been purged, the result is a snapshot instead: every person in the table and no
+ * deleted ids. A person missing from a snapshot has been deleted.
+ */
+public class PeopleChanges {
+
+    private final List<Person> changed;
+    private final List<Integer> deletedIds;
+    private final long watermark;
+    private final boolean snapshot;
+
+    /**
+     * @param changed    the people inserted or updated, with their current values.
+     * @param deletedIds the ids of the people deleted.
+     * @param watermark  the watermark to pass to the next {@code getChangedSince()}.
+     * @param snapshot   {@code true} if {@code changed} holds the whole table.
+     */
+    public PeopleChanges(List<Person> changed, List<Integer> deletedIds, long watermark, boolean snapshot) {
+        this.changed = Collections.unmodifiableList(new ArrayList<Person>(changed));
+        this.deletedIds = Collections.unmodifiableList(new ArrayList<Integer>(deletedIds));
+        this.watermark = watermark;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return the people inserted or updated since the watermark, or every person if
+     * this is a snapshot.
+     */
+    public List<Person> getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return the ids of the people deleted since the watermark; empty for a snapshot.
+     */
+    public List<Integer> getDeletedIds() {
+        return deletedIds;
+    }
+
+    /**
+     * @return the watermark to pass to the next {@code getChangedSince()}.
+     */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * @return {@code true} if this holds the whole table rather than the changes.
+     */
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return the number of people changed or deleted.
+     */
+    public int size() {
+        return changed.size() + deletedIds.size();
+    }
+
+    @Override
+    public String toString() {
+        return "PeopleChanges [changed=" + changed.size() + ", deleted=" + deletedIds.size()
+                + ", watermark=" + watermark + ", snapshot=" + snapshot + "]";
+    }
+}
@@ -0,0 +1,350 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.util.AbstractList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>The people held by the {@code Model}, indexed for constant-time access:</p>
+ * <ul>
+ *     <li>People saved in the database are found by id in an open-addressing hash map
+ *     with primitive {@code int} keys, so no {@code Integer} is boxed per lookup.</li>
+ *     <li>People not saved yet have no id, so they are kept apart and found by identity.
+ *     When a save gives them an id, {@code idAssigned()} moves them to the id map.</li>
+ *     <li>Every person also has a slot in an array kept in insertion order, which is the
+ *     order {@code asList()} shows them in. A removed person leaves an empty slot, and a
+ *     Fenwick tree counting the occupied slots turns a slot into a list index, and back,
+ *     in logarithmic time. The array is compacted once it is mostly empty.</li>
+ * </ul>
+ * Unlike a {@code HashSet<Person>}, two different people with the same name and
+ * password are both kept, because {@code Person.equals()} is never used. This class is
+ * not thread-safe; the {@code Model} only uses it on its event thread.
+ */
+final class PeopleStore {
+
+    // Open-addressing map from id to person and slot, with linear probing. Id 0 marks a free entry.
+    private int[] keys = new int[16];
+    private Person[] values = new Person[16];
+    private int[] slotsById = new int[16];
+    private int saved;
+
+    private final Map<Person, Integer> unsaved = new IdentityHashMap<Person, Integer>();
+
+    // Insertion order; removed people leave null slots until the next compaction.
+    private Person[] order = new Person[16];
+    private int end;
+    private int size;
+    // Fenwick tree over the slots of order: 1 for an occupied slot, 0 for an empty one.
+    private int[] tree = new int[17];
+
+    /**
+     * Adds a person at the end of the insertion order.
+     *
+     * @param person the person to add.
+     * @return {@code false} if the person, or another person with the same id, is already stored.
+     */
+    boolean add(Person person) {
+        if (contains(person) || (person.getId() != 0 && findId(person.getId()) >= 0))
+            return false;
+
+        if (end == order.length)
+            grow();
+        int slot = end++;
+        order[slot] = person;
+        increment(slot, 1);
+        size++;
+
+        if (person.getId() != 0)
+            putId(person.getId(), person, slot);
+        else
+            unsaved.put(person, slot);
+        return true;
+    }
+
+    /**
+     * Removes a person.
+     *
+     * @param person the person to remove.
+     * @return the index the person had in {@code asList()}, or -1 if it was not stored.
+     */
+    int remove(Person person) {
+        int slot = slotOf(person);
+        if (slot < 0)
+            return -1;
+
+        int index = rank(slot);
+        if (unsaved.remove(person) == null)
+            removeId(person.getId());
+        order[slot] = null;
+        increment(slot, -1);
+        size--;
+
+        int empty = end - size;
+        if (empty > 64 && empty > size)
+            compact();
+        return index;
+    }
+
+    /**
+     * @return {@code true} if this very person is stored.
+     */
+    boolean contains(Person person) {
+        return slotOf(person) >= 0;
+    }
+
+    /**
+     * @return the stored person with the given id, or {@code null} if there is none.
+     */
+    Person getById(int id) {
+        int entry = id == 0 ? -1 : findId(id);
+        return entry < 0 ? null : values[entry];
+    }
+
+    /**
+     * @return the index of the person in {@code asList()}, or -1 if it is not stored.
+     */
+    int indexOf(Person person) {
+        int slot = slotOf(person);
+        return slot < 0 ? -1 : rank(slot);
+    }
+
+    /**
+     * Moves a person that was saved since it was added from the unsaved people
+     * to the id map. Does nothing if it is not unsaved or still has no id.
+     *
+     * @param person a person that may have received an id.
+     */
+    void idAssigned(Person person) {
+        if (person.getId() == 0 || findId(person.getId()) >= 0)
+            return;
+        Integer slot = unsaved.remove(person);
+        if (slot != null)
+            putId(person.getId(), person, slot);
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        keys = new int[16];
+        values = new Person[16];
+        slotsById = new int[16];
+        saved = 0;
+        unsaved.clear();
+        order = new Person[16];
+        tree = new int[17];
+        end = 0;
+        size = 0;
+    }
+
+    /**
+     * @return an unmodifiable list of the people in insertion order. It is a view, so it
+     * shows later changes and costs nothing to create.
+     */
+    List<Person> asList() {
+        return new AbstractList<Person>() {
+            @Override
+            public Person get(int index) {
+                if (index < 0 || index >= size)
+                    throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+                return order[select(index)];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public int indexOf(Object o) {
+                return o instanceof Person ? PeopleStore.this.indexOf((Person) o) : -1;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Person && PeopleStore.this.contains((Person) o);
+            }
+
+            // Walks the slots directly instead of looking up every index.
+            @Override
+            public Iterator<Person> iterator() {
+                return new Iterator<Person>() {
+                    private int slot = nextSlot(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < end;
+                    }
+
+                    @Override
+                    public Person next() {
+                        if (slot >= end)
+                            throw new NoSuchElementException();
+                        Person person = order[slot];
+                        slot = nextSlot(slot + 1);
+                        return person;
+                    }
+                };
+            }
+        };
+    }
+
+    private int nextSlot(int slot) {
+        while (slot < end && order[slot] == null)
+            slot++;
+        return slot;
+    }
+
+    private int slotOf(Person person) {
+        if (person.getId() != 0) {
+            int entry = findId(person.getId());
+            if (entry >= 0 && values[entry] == person)
+                return slotsById[entry];
+        }
+        // A person saved in the background has an id before idAssigned() is called.
+        Integer slot = unsaved.get(person);
+        return slot == null ? -1 : slot;
+    }
+
+    /* ************************* id map ************************* */
+
+    private int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (keys.length - 1);
+    }
+
+    private int findId(int id) {
+        for (int i = hash(id); keys[i] != 0; i = (i + 1) & (keys.length - 1)) {
+            if (keys[i] == id)
+                return i;
+        }
+        return -1;
+    }
+
+    private void putId(int id, Person person, int slot) {
+        // Kept at most half full, so probe sequences stay short.
+        if ((saved + 1) * 2 > keys.length)
+            rehash(keys.length * 2);
+
+        int i = hash(id);
+        while (keys[i] != 0 && keys[i] != id)
+            i = (i + 1) & (keys.length - 1);
+        if (keys[i] == 0)
+            saved++;
+        keys[i] = id;
+        values[i] = person;
+        slotsById[i] = slot;
+    }
+
+    // Removes an entry and shifts back the entries of its probe sequence, so no tombstones are needed.
+    private void removeId(int id) {
+        int hole = findId(id);
+        if (hole < 0)
+            return;
+
+        int mask = keys.length - 1;
+        for (int i = (hole + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            int home = hash(keys[i]);
+            // The entry can fill the hole if its home is not between the hole and itself.
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                slotsById[hole] = slotsById[i];
+                hole = i;
+            }
+        }
+        keys[hole] = 0;
+        values[hole] = null;
+        saved--;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Person[] oldValues = values;
+        int[] oldSlots = slotsById;
+
+        keys = new int[capacity];
+        values = new Person[capacity];
+        slotsById = new int[capacity];
+        saved = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0)
+                putId(oldKeys[i], oldValues[i], oldSlots[i]);
+        }
+    }
+
+    /* ******************* insertion order ********************** */
+
+    private void grow() {
+        Person[] grown = new Person[order.length * 2];
+        System.arraycopy(order, 0, grown, 0, end);
+        order = grown;
+        rebuildTree();
+    }
+
+    // Moves the people to the first slots, keeping their order, and renumbers their slots.
+    private void compact() {
+        Person[] compacted = new Person[Math.max(16, Integer.highestOneBit(Math.max(1, size)) * 2)];
+        int slot = 0;
+        for (int i = 0; i < end; i++) {
+            Person person = order[i];
+            if (person == null)
+                continue;
+            compacted[slot] = person;
+            int entry = person.getId() == 0 ? -1 : findId(person.getId());
+            if (entry >= 0 && values[entry] == person)
+                slotsById[entry] = slot;
+            else
+                unsaved.put(person, slot);
+            slot++;
+        }
+        order = compacted;
+        end = slot;
+        rebuildTree();
+    }
+
+    // Builds the Fenwick tree of the occupied slots in linear time.
+    private void rebuildTree() {
+        tree = new int[order.length + 1];
+        for (int i = 1; i <= order.length; i++) {
+            if (i <= end && order[i - 1] != null)
+                tree[i]++;
+            int parent = i + (i & -i);
+            if (parent <= order.length)
+                tree[parent] += tree[i];
+        }
+    }
+
+    private void increment(int slot, int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i)
+            tree[i] += delta;
+    }
+
+    // The number of occupied slots before the given one, which is its index in the list.
+    private int rank(int slot) {
+        int count = 0;
+        for (int i = slot; i > 0; i -= i & -i)
+            count += tree[i];
+        return count;
+    }
+
+    // The slot holding the person at the given list index.
+    private int select(int index) {
+        int position = 0;
+        int remaining = index + 1;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] < remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        // The tree is 1-based: position is the tree index just before the slot,
+        // which is the slot's own 0-based number.
+        return position;
+    }
+}
@@ -24,6 +24,9 @@ public class Person {
     private int id;
     private String name;
     private String password;
+    // Bumped by the database on every update, so a save can tell that someone else
+    // changed the row since it was read. It is not part of equals().
+    private int version;
     /* Using the String data type for passwords is uncommon.
      * When getting the password in the view, you will likely apply a hashing algorithm to
      * create an encrypted version of the password, which you can then handle in subsequence
@@ -46,6 +49,14 @@ public class Person {
         this.password = password;
     }
 
+    // Used by the DAOs when reading a row, which also carries its version
+    public Person(int id, String name, String password, int version) {
+        this.id = id;
+        this.name = name;
+        this.password = password;
+        this.version = version;
+    }
+
 
     // getters and setters
     public int getId() {
@@ -72,6 +83,14 @@ public class Person {
         this.password = password;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
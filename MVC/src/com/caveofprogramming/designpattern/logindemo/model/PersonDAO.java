@@ -1,7 +1,9 @@
 package com.caveofprogramming.designpattern.logindemo.model;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * <p>The {@code PersonDAO} interface provides CRUD (create, retrieve, update, delete)
@@ -16,12 +18,117 @@ public interface PersonDAO {
 
     int addPerson(Person person) throws SQLException;
 
+    /**
+     * Adds all the given people to the database in as few round trips as possible.
+     *
+     * @param people the people to be added.
+     * @return the number of rows added.
+     * @throws SQLException if a database access error occurs.
+     */
+    int addPeople(Collection<Person> people) throws SQLException;
+
     Person getPerson(int id) throws SQLException;
 
     List<Person> getPeople() throws SQLException;
 
+    /**
+     * Streams all the people in the database, ordered by id, without holding them
+     * all in memory. The stream keeps database resources open until it is closed,
+     * so it must be used in a try-with-resources block.
+     *
+     * @return a stream of all the people in the database.
+     * @throws SQLException if a database access error occurs.
+     */
+    Stream<Person> streamPeople() throws SQLException;
+
+    /**
+     * Retrieves a page of people ordered by id, starting right after {@code lastId}.
+     * Pass 0 to get the first page, then the id of the last person of each page
+     * to get the next one.
+     *
+     * @param lastId the id of the last person of the previous page.
+     * @param limit  the maximum number of people to return.
+     * @return up to {@code limit} people with an id greater than {@code lastId}.
+     * @throws SQLException if a database access error occurs.
+     */
+    List<Person> getPeopleAfter(int lastId, int limit) throws SQLException;
+
+    /**
+     * Retrieves a page of people ordered by id, skipping the first {@code offset} people.
+     * Unlike {@code getPeopleAfter()}, any page can be read without reading the ones
+     * before it, at the cost of the database skipping {@code offset} rows.
+     *
+     * @param offset the number of people to skip.
+     * @param limit  the maximum number of people to return.
+     * @return up to {@code limit} people, starting at position {@code offset}.
+     * @throws SQLException if a database access error occurs.
+     */
+    List<Person> getPeoplePage(int offset, int limit) throws SQLException;
+
+    /**
+     * @return the number of people in the database.
+     * @throws SQLException if a database access error occurs.
+     */
+    int countPeople() throws SQLException;
+
+    /**
+     * Finds the people whose name starts with the given prefix, ordered by name.
+     *
+     * @param prefix the beginning of the name.
+     * @param limit  the maximum number of people to return.
+     * @return up to {@code limit} people whose name starts with {@code prefix}.
+     * @throws SQLException if a database access error occurs.
+     */
+    List<Person> findByName(String prefix, int limit) throws SQLException;
+
+    /**
+     * Retrieves what changed since a previous call, so a copy of the table can be kept up
+     * to date at a cost that depends on how many people changed rather than on how many
+     * there are. Pass 0 to get a snapshot of the whole table, then the watermark of each
+     * result to get the changes after it. Pass {@code Long.MAX_VALUE} to get nothing but
+     * the current watermark.
+     *
+     * @param watermark the watermark of the previous result, or 0.
+     * @return the people inserted or updated and the ids of the people deleted since
+     * {@code watermark}, or a snapshot if the changes are no longer known.
+     * @throws SQLException if a database access error occurs.
+     */
+    PeopleChanges getChangedSince(long watermark) throws SQLException;
+
     int updatePerson(Person person) throws SQLException;
 
+    /**
+     * Updates all the given people in the database in as few round trips as possible.
+     *
+     * @param people the people to be updated, identified by their id.
+     * @return the number of rows updated.
+     * @throws SQLException if a database access error occurs.
+     */
+    int updatePeople(Collection<Person> people) throws SQLException;
+
+    /**
+     * Writes all the given people in as few round trips as possible, whether they are
+     * new or not: a person without an id is inserted and receives the id generated by
+     * the database, a person with an id updates its row, or is inserted again with the
+     * same id if its row was deleted in the meantime.
+     *
+     * @param people the people to be written.
+     * @return which people were inserted and which were updated.
+     * @throws SQLException if a database access error occurs.
+     */
+    UpsertResult upsertPeople(Collection<Person> people) throws SQLException;
+
+    /**
+     * Reserves a block of consecutive ids that the database never gives to anyone else,
+     * in this process or any other, so rows can be written with their id chosen in advance
+     * with {@code upsertPeople()}. Ids of a block that are not used are skipped.
+     *
+     * @param count the number of ids to reserve.
+     * @return the first id of the block.
+     * @throws SQLException if a database access error occurs.
+     */
+    int reserveIds(int count) throws SQLException;
+
     int deletePerson(int id) throws SQLException;
 
     int deleteAll() throws SQLException;
@@ -0,0 +1,108 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A bounded, lock-free ring buffer for many producer threads and a single consumer
+ * thread. Producers claim a slot with a single compare-and-set, so publishing an element
+ * costs a few nanoseconds and never blocks; when the buffer is full {@code offer()} simply
+ * returns {@code false} and the caller decides what to do.</p>
+ * <p>Each slot carries a sequence number telling whether it is free for the producer of a
+ * given lap around the ring or holds an element ready for the consumer. This is the
+ * well-known bounded queue design by Dmitry Vyukov.</p>
+ *
+ * @param <E> the type of the elements.
+ */
+class RingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();  // next position to publish
+    private volatile long head;  // next position to consume, only written by the consumer
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of two.
+     */
+    RingBuffer(int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("capacity must be at least 2");
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        elements = new AtomicReferenceArray<E>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequences.set(i, i);
+    }
+
+    /**
+     * Publishes an element, from any thread.
+     *
+     * @param element the element to publish.
+     * @return {@code false} if the buffer is full.
+     */
+    boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1);  // hands the slot to the consumer
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;  // the consumer has not freed this slot yet
+            }
+            // Another producer claimed the slot first; try the next position.
+        }
+    }
+
+    /**
+     * Moves up to {@code max} elements into the given list. Must only be called
+     * from the single consumer thread.
+     *
+     * @param drain the list the elements are added to.
+     * @param max   the maximum number of elements to move.
+     * @return the number of elements moved.
+     */
+    int drainTo(List<E> drain, int max) {
+        long position = head;
+        int count = 0;
+
+        while (count < max) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1)
+                break;  // not published yet
+
+            drain.add(elements.get(index));
+            elements.lazySet(index, null);
+            sequences.set(index, position + mask + 1);  // free for the next lap
+            position++;
+            count++;
+        }
+
+        head = position;
+        return count;
+    }
+
+    /**
+     * @return the number of positions claimed by producers so far.
+     */
+    long published() {
+        return tail.get();
+    }
+
+    /**
+     * @return an estimate of the number of elements waiting to be consumed.
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+}
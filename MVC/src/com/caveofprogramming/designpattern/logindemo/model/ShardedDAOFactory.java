@@ -0,0 +1,76 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>The {@code ShardedDAOFactory} class wraps several {@code DAOFactory} instances, one per
+ * database, and creates a {@code ShardedPersonDAO} that spreads the people over them by
+ * a consistent hash of their id. The callers still see a single {@code PersonDAO}, so
+ * the rest of the application does not know the data is split.</p>
+ * The factories can be of any type, for example several {@code EmbeddedDAOFactory}
+ * instances as stand-in databases in tests. The log is not sharded: it is written to
+ * the first factory. Being built from other factories, this one is not created by
+ * {@code getFactory()}; use {@code DAOFactory.register()} to make it available there
+ * under {@code DAOFactory.SHARDED}.
+ */
+public class ShardedDAOFactory extends DAOFactory {
+
+    private final List<DAOFactory> shards;
+
+    /**
+     * @param shards the factories of the databases the people are spread over. Their
+     *               order must stay the same, since it decides where each id lives.
+     */
+    public ShardedDAOFactory(List<DAOFactory> shards) {
+        if (shards.isEmpty())
+            throw new IllegalArgumentException("At least one shard is needed");
+        this.shards = List.copyOf(shards);
+    }
+
+    @Override
+    public int getType() {
+        return SHARDED;
+    }
+
+    /**
+     * @return the factories of the shards.
+     */
+    public List<DAOFactory> getShards() {
+        return shards;
+    }
+
+    /**
+     * Creates a {@code ShardedPersonDAO} over the {@code PersonDAO} of every shard.
+     *
+     * @return new instance {@code ShardedPersonDAO} as a {@code PersonDAO}.
+     * @see DAOFactory#getPersonDAO()
+     */
+    @Override
+    protected PersonDAO createPersonDAO() {
+        List<PersonDAO> personDAOs = new ArrayList<PersonDAO>(shards.size());
+        for (DAOFactory shard : shards)
+            personDAOs.add(shard.getPersonDAO());
+        return new ShardedPersonDAO(personDAOs);
+    }
+
+    /**
+     * Closes the factory of every shard.
+     *
+     * @see DAOFactory#close()
+     */
+    @Override
+    public void close() {
+        for (DAOFactory shard : shards)
+            shard.close();
+    }
+
+    /**
+     * @return the {@code LogDAO} of the first shard.
+     * @see DAOFactory#getLogDAO()
+     */
+    @Override
+    protected LogDAO createLogDAO() {
+        return shards.get(0).getLogDAO();
+    }
+}
@@ -0,0 +1,492 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>A {@code PersonDAO} that spreads the people over several {@code PersonDAO}s, the
+ * shards, so the table can grow beyond what a single database holds. It is created by
+ * {@code ShardedDAOFactory}.</p>
+ * <p>Each person lives on the shard chosen by a consistent hash of its id: every shard
+ * owns {@code VIRTUAL_NODES} points on a hash ring, and an id belongs to the first point
+ * at or after its own hash. Adding a shard to the ring only moves the ids that fall on
+ * its new points.</p>
+ * <p>Since the shard depends on the id, the id must be known before the row is written,
+ * so ids are not generated by each database. The first shard is the coordinator: ids are
+ * reserved from it in blocks of {@code ID_BLOCK} with {@code reserveIds()}, which never
+ * gives the same id twice, even to DAOs in other processes, and the ids of a block are
+ * then handed out here without a round trip. New people are written with
+ * {@code upsertPeople()}, which inserts a row with the given id.</p>
+ * Calls about one id go straight to its shard. Calls about many people are split per
+ * shard and run in parallel, and queries over the whole table are scattered to every
+ * shard in parallel and their results merged in id order, or name order for
+ * {@code findByName()}.
+ * <p>Each shard numbers its changes with its own sequence, so the watermark of
+ * {@code getChangedSince()} stands for one watermark per shard: the DAO remembers the
+ * latest {@code WATERMARKS} of these vectors and hands out a number for each. A watermark
+ * it no longer remembers gets a snapshot, as if it were 0.</p>
+ */
+public class ShardedPersonDAO implements PersonDAO {
+
+    // Points per shard on the hash ring; more points spread the ids more evenly.
+    static final int VIRTUAL_NODES = 64;
+
+    private static final Comparator<Person> BY_ID = Comparator.comparingInt(Person::getId);
+    private static final Comparator<Person> BY_NAME = Comparator
+            .comparing(Person::getName, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparingInt(Person::getId);
+
+    private final List<PersonDAO> shards;
+    private final NavigableMap<Integer, Integer> ring = new TreeMap<Integer, Integer>();
+    private final ExecutorService executor;
+
+    // Ids reserved from the coordinator shard at a time.
+    static final int ID_BLOCK = 100;
+
+    // The ids of the current block not handed out yet, from nextId to blockEnd (excluded).
+    private int nextId;
+    private int blockEnd;
+
+    // Number of watermarks remembered for getChangedSince().
+    static final int WATERMARKS = 64;
+
+    // The watermark of every shard for each watermark handed out, least recently used first.
+    private final AtomicLong lastWatermark = new AtomicLong();
+    private final Map<Long, long[]> watermarks = new LinkedHashMap<Long, long[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest) {
+            return size() > WATERMARKS;
+        }
+    };
+
+    /**
+     * @param shards the DAOs of the databases the people are spread over.
+     */
+    public ShardedPersonDAO(List<PersonDAO> shards) {
+        if (shards.isEmpty())
+            throw new IllegalArgumentException("At least one shard is needed");
+        this.shards = List.copyOf(shards);
+
+        for (int shard = 0; shard < this.shards.size(); shard++) {
+            for (int node = 0; node < VIRTUAL_NODES; node++)
+                ring.put(mix(shard * VIRTUAL_NODES + node + 0x5bd1e995), shard);
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(this.shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "shard-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param id the id of a person.
+     * @return the index of the shard that holds the person with that id.
+     */
+    public int getShard(int id) {
+        Map.Entry<Integer, Integer> point = ring.ceilingEntry(mix(id));
+        return point != null ? point.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * @return the DAOs of the shards.
+     */
+    public List<PersonDAO> getShards() {
+        return shards;
+    }
+
+    @Override
+    public int addPerson(Person person) throws SQLException {
+        person.setId(nextId());
+        return shardOf(person.getId()).upsertPeople(List.of(person)).size();
+    }
+
+    @Override
+    public int addPeople(Collection<Person> people) throws SQLException {
+        for (Person person : people)
+            person.setId(nextId());
+        return upsertPeople(people).size();
+    }
+
+    @Override
+    public Person getPerson(int id) throws SQLException {
+        return shardOf(id).getPerson(id);
+    }
+
+    /**
+     * Reads every shard in parallel and merges the people in id order.
+     *
+     * @see PersonDAO#getPeople()
+     */
+    @Override
+    public List<Person> getPeople() throws SQLException {
+        return merge(scatter(PersonDAO::getPeople), BY_ID, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Streams every shard at once and merges them lazily in id order, so no more than
+     * one person per shard is held in memory by the merge.
+     *
+     * @see PersonDAO#streamPeople()
+     */
+    @Override
+    public Stream<Person> streamPeople() throws SQLException {
+        List<Stream<Person>> streams = new ArrayList<Stream<Person>>(shards.size());
+        try {
+            for (PersonDAO shard : shards)
+                streams.add(shard.streamPeople());
+        } catch (SQLException | RuntimeException e) {
+            for (Stream<Person> stream : streams)
+                stream.close();
+            throw e;
+        }
+
+        List<Iterator<Person>> iterators = new ArrayList<Iterator<Person>>(streams.size());
+        for (Stream<Person> stream : streams)
+            iterators.add(stream.iterator());
+
+        Stream<Person> merged = StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                new MergingIterator(iterators, BY_ID), Spliterator.ORDERED | Spliterator.NONNULL), false);
+        return merged.onClose(() -> {
+            for (Stream<Person> stream : streams)
+                stream.close();
+        });
+    }
+
+    @Override
+    public List<Person> getPeopleAfter(int lastId, int limit) throws SQLException {
+        return merge(scatter(shard -> shard.getPeopleAfter(lastId, limit)), BY_ID, limit);
+    }
+
+    /**
+     * Any of the first {@code offset + limit} people can be on any shard, so each shard
+     * returns that many and the merge skips the first {@code offset}. Deep pages are
+     * expensive; {@code getPeopleAfter()} is the way to walk the whole table.
+     *
+     * @see PersonDAO#getPeoplePage(int, int)
+     */
+    @Override
+    public List<Person> getPeoplePage(int offset, int limit) throws SQLException {
+        int end = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        List<Person> first = merge(scatter(shard -> shard.getPeoplePage(0, end)), BY_ID, end);
+        return new ArrayList<Person>(first.subList(Math.min(offset, first.size()), first.size()));
+    }
+
+    @Override
+    public int countPeople() throws SQLException {
+        int count = 0;
+        for (int shardCount : scatter(PersonDAO::countPeople))
+            count += shardCount;
+        return count;
+    }
+
+    @Override
+    public List<Person> findByName(String prefix, int limit) throws SQLException {
+        return merge(scatter(shard -> shard.findByName(prefix, limit)), BY_NAME, limit);
+    }
+
+    /**
+     * Asks every shard in parallel for its changes since its own watermark, and hands out
+     * a new watermark standing for theirs. If any shard answers with a snapshot, every
+     * shard is asked for one, so the result holds the whole table.
+     *
+     * @see PersonDAO#getChangedSince(long)
+     */
+    @Override
+    public PeopleChanges getChangedSince(long watermark) throws SQLException {
+        long[] since = new long[shards.size()];
+        if (watermark == Long.MAX_VALUE) {
+            Arrays.fill(since, Long.MAX_VALUE);
+        } else if (watermark != 0) {
+            synchronized (watermarks) {
+                long[] known = watermarks.get(watermark);
+                if (known != null)
+                    since = known;
+            }
+        }
+
+        List<PeopleChanges> results = changedSince(since);
+        boolean snapshot = false;
+        for (PeopleChanges changes : results)
+            snapshot |= changes.isSnapshot();
+        if (snapshot) {
+            for (PeopleChanges changes : results) {
+                if (!changes.isSnapshot()) {
+                    results = changedSince(new long[shards.size()]);
+                    break;
+                }
+            }
+        }
+
+        long[] next = new long[results.size()];
+        List<Person> changed = new ArrayList<Person>();
+        List<Integer> deletedIds = new ArrayList<Integer>();
+        List<List<Person>> snapshots = new ArrayList<List<Person>>();
+        for (int shard = 0; shard < results.size(); shard++) {
+            PeopleChanges changes = results.get(shard);
+            next[shard] = changes.getWatermark();
+            if (snapshot)
+                snapshots.add(changes.getChanged());
+            else
+                changed.addAll(changes.getChanged());
+            deletedIds.addAll(changes.getDeletedIds());
+        }
+        if (snapshot)
+            changed = merge(snapshots, BY_ID, Integer.MAX_VALUE);
+
+        long token = lastWatermark.incrementAndGet();
+        synchronized (watermarks) {
+            watermarks.put(token, next);
+        }
+        return new PeopleChanges(changed, deletedIds, token, snapshot);
+    }
+
+    @Override
+    public int updatePerson(Person person) throws SQLException {
+        return shardOf(person.getId()).updatePerson(person);
+    }
+
+    @Override
+    public int updatePeople(Collection<Person> people) throws SQLException {
+        int updated = 0;
+        for (int shardUpdated : scatter(people, PersonDAO::updatePeople))
+            updated += shardUpdated;
+        return updated;
+    }
+
+    /**
+     * People without an id are given one first, so every person can be sent to its
+     * shard. The shards are written in parallel.
+     *
+     * @see PersonDAO#upsertPeople(Collection)
+     */
+    @Override
+    public UpsertResult upsertPeople(Collection<Person> people) throws SQLException {
+        for (Person person : people) {
+            if (person.getId() == 0)
+                person.setId(nextId());
+        }
+
+        Set<Person> inserted = Collections.newSetFromMap(new IdentityHashMap<Person, Boolean>());
+        for (UpsertResult result : scatter(people, PersonDAO::upsertPeople))
+            inserted.addAll(result.getInserted());
+
+        // Report the people in the order they were given, not shard by shard.
+        List<Person> insertedInOrder = new ArrayList<Person>();
+        List<Person> updatedInOrder = new ArrayList<Person>();
+        for (Person person : people) {
+            if (inserted.contains(person))
+                insertedInOrder.add(person);
+            else
+                updatedInOrder.add(person);
+        }
+        return new UpsertResult(insertedInOrder, updatedInOrder);
+    }
+
+    /**
+     * Reserves the ids on the coordinator, the first shard, which every
+     * {@code ShardedPersonDAO} over the same shards asks.
+     *
+     * @see PersonDAO#reserveIds(int)
+     */
+    @Override
+    public int reserveIds(int count) throws SQLException {
+        return shards.get(0).reserveIds(count);
+    }
+
+    @Override
+    public int deletePerson(int id) throws SQLException {
+        return shardOf(id).deletePerson(id);
+    }
+
+    @Override
+    public int deleteAll() throws SQLException {
+        int deleted = 0;
+        for (int shardDeleted : scatter(PersonDAO::deleteAll))
+            deleted += shardDeleted;
+        return deleted;
+    }
+
+    // Asks each shard for its changes since its own watermark, in parallel.
+    private List<PeopleChanges> changedSince(long[] since) throws SQLException {
+        List<Future<PeopleChanges>> futures = new ArrayList<Future<PeopleChanges>>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            PersonDAO dao = shards.get(shard);
+            long watermark = since[shard];
+            futures.add(executor.submit(() -> dao.getChangedSince(watermark)));
+        }
+        return gather(futures);
+    }
+
+    private PersonDAO shardOf(int id) {
+        return shards.get(getShard(id));
+    }
+
+    private synchronized int nextId() throws SQLException {
+        if (nextId == blockEnd) {
+            nextId = reserveIds(ID_BLOCK);
+            blockEnd = nextId + ID_BLOCK;
+        }
+        return nextId++;
+    }
+
+    @FunctionalInterface
+    private interface ShardCall<T> {
+        T call(PersonDAO shard) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ShardWrite<T> {
+        T call(PersonDAO shard, List<Person> people) throws SQLException;
+    }
+
+    // Runs the call on every shard in parallel and returns the results in shard order.
+    private <T> List<T> scatter(ShardCall<T> call) throws SQLException {
+        List<Future<T>> futures = new ArrayList<Future<T>>(shards.size());
+        for (PersonDAO shard : shards)
+            futures.add(executor.submit(() -> call.call(shard)));
+        return gather(futures);
+    }
+
+    // Splits the people by shard and runs the call on each shard that has some, in parallel.
+    private <T> List<T> scatter(Collection<Person> people, ShardWrite<T> call) throws SQLException {
+        Map<Integer, List<Person>> byShard = new LinkedHashMap<Integer, List<Person>>();
+        for (Person person : people)
+            byShard.computeIfAbsent(getShard(person.getId()), shard -> new ArrayList<Person>()).add(person);
+
+        List<Future<T>> futures = new ArrayList<Future<T>>(byShard.size());
+        for (Map.Entry<Integer, List<Person>> entry : byShard.entrySet()) {
+            PersonDAO shard = shards.get(entry.getKey());
+            futures.add(executor.submit(() -> call.call(shard, entry.getValue())));
+        }
+        return gather(futures);
+    }
+
+    // Waits for every shard, even after a failure, so no write is left running. The
+    // conflicts of all shards are reported together; otherwise the first error is thrown.
+    private static <T> List<T> gather(List<Future<T>> futures) throws SQLException {
+        List<T> results = new ArrayList<T>(futures.size());
+        List<OptimisticLockException.Conflict> conflicts = new ArrayList<OptimisticLockException.Conflict>();
+        Exception failure = null;
+
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof OptimisticLockException)
+                    conflicts.addAll(((OptimisticLockException) e.getCause()).getConflicts());
+                else if (failure == null)
+                    failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null)
+                    failure = e;
+            }
+        }
+
+        if (failure instanceof SQLException)
+            throw (SQLException) failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure != null)
+            throw new SQLException("Can't reach the shards", failure);
+        if (!conflicts.isEmpty())
+            throw new OptimisticLockException(conflicts);
+        return results;
+    }
+
+    // Merges lists that are each sorted by the given order, keeping at most limit people.
+    private static List<Person> merge(List<List<Person>> lists, Comparator<Person> order, int limit) {
+        List<Iterator<Person>> iterators = new ArrayList<Iterator<Person>>(lists.size());
+        int size = 0;
+        for (List<Person> list : lists) {
+            iterators.add(list.iterator());
+            size += list.size();
+        }
+
+        List<Person> merged = new ArrayList<Person>(Math.min(size, limit));
+        Iterator<Person> people = new MergingIterator(iterators, order);
+        while (merged.size() < limit && people.hasNext())
+            merged.add(people.next());
+        return merged;
+    }
+
+    // Spreads consecutive ids over the ring (the finalizer of MurmurHash3).
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * A k-way merge of sorted iterators, using a heap of their next people.
+     */
+    private static class MergingIterator implements Iterator<Person> {
+        private final PriorityQueue<Head> heads;
+
+        private MergingIterator(List<Iterator<Person>> iterators, Comparator<Person> order) {
+            heads = new PriorityQueue<Head>(Math.max(1, iterators.size()),
+                    (a, b) -> order.compare(a.person, b.person));
+            for (Iterator<Person> iterator : iterators) {
+                if (iterator.hasNext())
+                    heads.add(new Head(iterator.next(), iterator));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Person next() {
+            Head head = heads.poll();
+            if (head == null)
+                throw new NoSuchElementException();
+            Person person = head.person;
+            if (head.rest.hasNext()) {
+                head.person = head.rest.next();
+                heads.add(head);
+            }
+            return person;
+        }
+
+        private static class Head {
+            private Person person;
+            private final Iterator<Person> rest;
+
+            private Head(Person person, Iterator<Person> rest) {
+                this.person = person;
+                this.rest = rest;
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A bounded LRU cache of {@code PreparedStatement}s that belongs to a single pooled
+ * connection. Statements are keyed by their SQL text, so a DAO that prepares the same
+ * SQL over and over gets the statement the server has already parsed.</p>
+ * <p>The statements handed out are wrappers: calling {@code close()} clears their
+ * parameters and returns them to the cache instead of closing them. They are really
+ * closed when they fall out of the cache or when the physical connection is closed.
+ * Every borrow gets a new wrapper, so a borrower that keeps its wrapper after closing
+ * it gets "Statement is closed" instead of running on the next borrower's statement.</p>
+ * If the statement for a given SQL text is already in use, for example while iterating
+ * its results, a second, uncached statement is prepared.
+ */
+class StatementCache {
+
+    // Used when prepareStatement() was called without an auto-generated keys flag.
+    static final int NO_KEYS_FLAG = -1;
+
+    private final Connection conn;
+    private final int maxSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final Map<Key, CachedStatement> statements;
+
+    /**
+     * @param conn    the physical connection the statements are prepared on.
+     * @param maxSize the maximum number of statements kept open; 0 disables caching.
+     * @param hits    counter incremented on every cache hit.
+     * @param misses  counter incremented on every cache miss.
+     */
+    StatementCache(Connection conn, int maxSize, LongAdder hits, LongAdder misses) {
+        this.conn = conn;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        // Access ordered, so iteration starts with the least recently used statement.
+        this.statements = new LinkedHashMap<Key, CachedStatement>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns a cached statement for the given SQL, preparing it on a miss.
+     *
+     * @param handle            the connection the caller sees, returned by {@code getConnection()}.
+     * @param sql               the SQL text.
+     * @param autoGeneratedKeys {@code Statement.RETURN_GENERATED_KEYS},
+     *                          {@code Statement.NO_GENERATED_KEYS} or {@code NO_KEYS_FLAG}.
+     * @return a prepared statement whose {@code close()} returns it to the cache.
+     * @throws SQLException if the statement cannot be prepared.
+     */
+    synchronized PreparedStatement prepare(Connection handle, String sql, int autoGeneratedKeys)
+            throws SQLException {
+        if (maxSize <= 0) {
+            misses.increment();
+            return prepareStatement(sql, autoGeneratedKeys);
+        }
+
+        Key key = new Key(sql, autoGeneratedKeys);
+        CachedStatement cached = statements.get(key);
+
+        if (cached != null && cached.borrow == null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            if (cached != null)  // in use, so hand out a statement outside the cache
+                return prepareStatement(sql, autoGeneratedKeys);
+
+            cached = new CachedStatement(prepareStatement(sql, autoGeneratedKeys));
+            statements.put(key, cached);
+            evictOverflow();
+        }
+
+        Borrow borrow = new Borrow(cached, handle);
+        cached.borrow = borrow;
+        return borrow.proxy;
+    }
+
+    /**
+     * Returns to the cache any statement its borrower forgot to close. Called when the
+     * connection goes back to the pool, so the next borrower finds every statement free.
+     */
+    synchronized void releaseAll() {
+        for (CachedStatement cached : new ArrayList<CachedStatement>(statements.values())) {
+            if (cached.borrow != null)
+                release(cached.borrow);
+        }
+    }
+
+    /**
+     * Closes every cached statement. Called when the physical connection is closed.
+     */
+    synchronized void closeAll() {
+        // Reported once, since a broken connection fails to close every statement.
+        int failed = 0;
+        for (CachedStatement cached : statements.values()) {
+            if (!cached.closePhysical())
+                failed++;
+        }
+        statements.clear();
+        if (failed > 0)
+            System.out.println("Can't close " + failed + " cached statements");
+    }
+
+    synchronized int size() {
+        return statements.size();
+    }
+
+    private PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return autoGeneratedKeys == NO_KEYS_FLAG
+                ? conn.prepareStatement(sql)
+                : conn.prepareStatement(sql, autoGeneratedKeys);
+    }
+
+    private void evictOverflow() {
+        Iterator<CachedStatement> iterator = statements.values().iterator();
+        while (statements.size() > maxSize && iterator.hasNext()) {
+            CachedStatement eldest = iterator.next();
+            iterator.remove();
+            eldest.evicted = true;
+            // Statements still in use are closed when their borrower releases them.
+            if (eldest.borrow == null)
+                closeEvicted(eldest);
+        }
+    }
+
+    // Called when a borrower closes its statement wrapper. A wrapper whose borrow has
+    // already ended is ignored.
+    private synchronized void release(Borrow borrow) {
+        CachedStatement cached = borrow.cached;
+        if (cached.borrow != borrow)
+            return;
+        cached.borrow = null;
+        if (cached.evicted) {
+            closeEvicted(cached);
+            return;
+        }
+        try {
+            cached.closeResults();
+            cached.statement.clearParameters();
+            cached.statement.clearBatch();
+        } catch (SQLException e) {
+            statements.values().remove(cached);
+            closeEvicted(cached);
+        }
+    }
+
+    private static void closeEvicted(CachedStatement cached) {
+        if (!cached.closePhysical())
+            System.out.println("Can't close statement");
+    }
+
+    private static class Key {
+        private final String sql;
+        private final int autoGeneratedKeys;
+
+        private Key(String sql, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return autoGeneratedKeys == key.autoGeneratedKeys && sql.equals(key.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sql, autoGeneratedKeys);
+        }
+    }
+
+    /**
+     * A physical statement kept in the cache. Its fields are guarded by the cache lock,
+     * except {@code borrow}, which the wrappers also read without it.
+     */
+    private static class CachedStatement {
+        private final PreparedStatement statement;
+        private final List<ResultSet> results = new ArrayList<ResultSet>();
+        private volatile Borrow borrow;  // null while the statement is free
+        private boolean evicted;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        private void closeResults() throws SQLException {
+            for (ResultSet resultSet : results)
+                resultSet.close();
+            results.clear();
+        }
+
+        private boolean closePhysical() {
+            try {
+                results.clear();
+                statement.close();
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The wrapper handed out for one borrow of a cached statement. It only reaches the
+     * statement while it is still the statement's current borrow.
+     */
+    private class Borrow implements InvocationHandler {
+        private final CachedStatement cached;
+        private final Connection handle;
+        private final PreparedStatement proxy;
+
+        private Borrow(CachedStatement cached, Connection handle) {
+            this.cached = cached;
+            this.handle = handle;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    StatementCache.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    release(this);
+                    return null;
+                case "isClosed":
+                    return cached.borrow != this || cached.statement.isClosed();
+                case "getConnection":
+                    return handle;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached " + cached.statement;
+                default:
+                    if (cached.borrow != this)
+                        throw new SQLException("Statement is closed");
+                    try {
+                        Object result = method.invoke(cached.statement, args);
+                        // Remember result sets, so they are closed with the statement wrapper.
+                        if (result instanceof ResultSet) {
+                            synchronized (StatementCache.this) {
+                                cached.results.add((ResultSet) result);
+                            }
+                        }
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
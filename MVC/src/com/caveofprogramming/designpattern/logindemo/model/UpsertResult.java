@@ -0,0 +1,53 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>The outcome of {@code PersonDAO.upsertPeople()}: which of the given people were
+ * inserted as new rows and which updated an existing row.</p>
+ * A person with an id can end up in either list: its row is updated if it still exists,
+ * and inserted again with the same id if it was deleted in the meantime. People without
+ * an id are always inserted, and have the id generated by the database afterwards.
+ */
+public class UpsertResult {
+
+    private final List<Person> inserted;
+    private final List<Person> updated;
+
+    /**
+     * @param inserted the people written as new rows.
+     * @param updated  the people whose existing row was updated.
+     */
+    public UpsertResult(List<Person> inserted, List<Person> updated) {
+        this.inserted = Collections.unmodifiableList(new ArrayList<Person>(inserted));
+        this.updated = Collections.unmodifiableList(new ArrayList<Person>(updated));
+    }
+
+    /**
+     * @return the people written as new rows, in the order they were given.
+     */
+    public List<Person> getInserted() {
+        return inserted;
+    }
+
+    /**
+     * @return the people whose existing row was updated, in the order they were given.
+     */
+    public List<Person> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return the number of rows inserted or updated.
+     */
+    public int size() {
+        return inserted.size() + updated.size();
+    }
+
+    @Override
+    public String toString() {
+        return "UpsertResult [inserted=" + inserted.size() + ", updated=" + updated.size() + "]";
+    }
+}
@@ -0,0 +1,17 @@
+package com.caveofprogramming.designpattern.logindemo.view;
+
+/**
+ * Listener interface for handling the "Cancel" button shown next to the
+ * progress bar while the application loads or saves people in the background.
+ * <p>
+ * Like {@code SaveListener}, it keeps the View unaware of the Controller:
+ * the View only reports that the user wants to stop the running task.
+ * </p>
+ */
+public interface CancelListener {
+
+    /**
+     * Invoked when the user asks to cancel the running background task.
+     */
+    public void onCancel();
+}
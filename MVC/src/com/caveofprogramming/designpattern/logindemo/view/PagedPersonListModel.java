@@ -0,0 +1,162 @@
+package com.caveofprogramming.designpattern.logindemo.view;
+
+import com.caveofprogramming.designpattern.logindemo.model.AsyncPersonDAO;
+import com.caveofprogramming.designpattern.logindemo.model.Person;
+
+import javax.swing.*;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>A {@code ListModel} that shows every person in the database without holding them
+ * all in memory. It only knows how many people there are; the people themselves are
+ * read from the {@code PersonDAO} a page at a time, when the {@code JList} asks for a
+ * row that is not loaded yet, so the list can be shown as soon as the count is known.</p>
+ * <p>Pages are read in the background and kept in a small cache that forgets the least
+ * recently used page when it is full, so memory stays flat however far the user scrolls.
+ * When a page is needed, the pages before and after it are read too, so scrolling
+ * usually finds the next rows already loaded. A page that follows a loaded page is read
+ * with {@code getPeopleAfter()} from the last id of that page; other pages are read by
+ * position with {@code getPeoplePage()}.</p>
+ * Rows that are not loaded yet are shown as {@code null}, which a {@code JList} draws as
+ * an empty row. The {@code JList} should have a fixed cell height or a prototype cell
+ * value, otherwise it asks for every row to measure them. This class, like every Swing
+ * model, must only be used on the event dispatch thread.
+ */
+public class PagedPersonListModel extends AbstractListModel<Person> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient AsyncPersonDAO personDAO;
+    private final int pageSize;
+    private final Map<Integer, List<Person>> pages;
+    private final Set<Integer> loading = new HashSet<Integer>();
+
+    private int size;
+    // Incremented by refresh(), so pages read before it are not shown afterwards.
+    private int generation;
+
+    /**
+     * Creates a model reading pages of 100 people and keeping up to 20 of them.
+     *
+     * @param personDAO the DAO the people are read from.
+     */
+    public PagedPersonListModel(AsyncPersonDAO personDAO) {
+        this(personDAO, 100, 20);
+    }
+
+    /**
+     * @param personDAO the DAO the people are read from.
+     * @param pageSize  the number of people read at once.
+     * @param maxPages  the number of pages kept in memory; at least 3, so a page and
+     *                  the ones around it fit.
+     */
+    public PagedPersonListModel(AsyncPersonDAO personDAO, int pageSize, int maxPages) {
+        if (pageSize < 1)
+            throw new IllegalArgumentException("pageSize must be at least 1");
+        if (maxPages < 3)
+            throw new IllegalArgumentException("maxPages must be at least 3");
+
+        this.personDAO = personDAO;
+        this.pageSize = pageSize;
+        // Access ordered, so the eldest page is the least recently used one.
+        this.pages = new LinkedHashMap<Integer, List<Person>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Person>> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the person at the given row, or {@code null} if its page is not loaded
+     * yet. In that case the page is read in the background and the rows are updated
+     * once it arrives.
+     */
+    @Override
+    public Person getElementAt(int index) {
+        int page = index / pageSize;
+        List<Person> people = pages.get(page);
+
+        load(page);
+        load(page + 1);
+        load(page - 1);
+
+        int offset = index - page * pageSize;
+        return people != null && offset < people.size() ? people.get(offset) : null;
+    }
+
+    /**
+     * Counts the people again and forgets every loaded page, so the list shows the
+     * current content of the database. Pages are read again as the list asks for them.
+     *
+     * @return a future completed on the event dispatch thread once the new size is shown.
+     */
+    public CompletableFuture<Void> refresh() {
+        return personDAO.countPeople().thenAcceptAsync(count -> {
+            generation++;
+            pages.clear();
+            loading.clear();
+
+            int oldSize = size;
+            size = count;
+            if (count < oldSize)
+                fireIntervalRemoved(this, count, oldSize - 1);
+            else if (count > oldSize)
+                fireIntervalAdded(this, oldSize, count - 1);
+            if (Math.min(oldSize, count) > 0)
+                fireContentsChanged(this, 0, Math.min(oldSize, count) - 1);
+        }, SwingUtilities::invokeLater);
+    }
+
+    /**
+     * @return the number of pages held in memory.
+     */
+    public int getLoadedPages() {
+        return pages.size();
+    }
+
+    // Starts reading a page unless it is loaded, being read or out of range.
+    private void load(int page) {
+        if (page < 0 || page * (long) pageSize >= size
+                || pages.containsKey(page) || !loading.add(page))
+            return;
+
+        // The previous page gives the id to seek from, which is cheaper than an offset.
+        List<Person> previous = page > 0 ? pages.get(page - 1) : null;
+        CompletableFuture<List<Person>> read;
+        if (page == 0)
+            read = personDAO.getPeopleAfter(0, pageSize);
+        else if (previous != null && previous.size() == pageSize)
+            read = personDAO.getPeopleAfter(previous.get(pageSize - 1).getId(), pageSize);
+        else
+            read = personDAO.getPeoplePage(page * pageSize, pageSize);
+
+        int readGeneration = generation;
+        read.whenCompleteAsync((people, error) -> {
+            if (readGeneration != generation)
+                return;
+
+            loading.remove(page);
+            if (error != null) {
+                System.out.println("Can't load people page " + page + ": " + error.getMessage());
+                return;
+            }
+            pages.put(page, people);
+
+            int first = page * pageSize;
+            int last = Math.min(first + pageSize, size) - 1;
+            if (first <= last)
+                fireContentsChanged(this, first, last);
+        }, SwingUtilities::invokeLater);
+    }
+}
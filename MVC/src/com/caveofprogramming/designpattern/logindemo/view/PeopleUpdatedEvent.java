@@ -0,0 +1,67 @@
+package com.caveofprogramming.designpattern.logindemo.view;
+
+import com.caveofprogramming.designpattern.logindemo.model.Person;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class describes a change made to the list of people held by the {@code Model},
+ * so a listener can apply just that change instead of rebuilding its whole list.
+ * Like {@code CreateUserEvent}, it is a simple Bean.
+ * <p>
+ * The change covers the indices from {@code fromIndex} to {@code toIndex}, both
+ * included, of the model's list:
+ * </p>
+ * <ul>
+ *     <li>{@code ADDED}: {@code people} were inserted at {@code fromIndex}.</li>
+ *     <li>{@code REMOVED}: the people at those indices were removed.</li>
+ *     <li>{@code CHANGED}: the people at those indices are now {@code people}.</li>
+ *     <li>{@code RELOADED}: the whole list was replaced by {@code people}.</li>
+ * </ul>
+ */
+public class PeopleUpdatedEvent {
+
+    public enum Type {
+        ADDED, REMOVED, CHANGED, RELOADED
+    }
+
+    private final Type type;
+    private final int fromIndex;
+    private final int toIndex;
+    private final List<Person> people;
+
+    public PeopleUpdatedEvent(Type type, int fromIndex, int toIndex, List<Person> people) {
+        this.type = type;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+        this.people = Collections.unmodifiableList(people);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getFromIndex() {
+        return fromIndex;
+    }
+
+    /**
+     * @return the last index of the change, included; {@code fromIndex - 1} if no index is covered.
+     */
+    public int getToIndex() {
+        return toIndex;
+    }
+
+    /**
+     * @return the people added, changed or reloaded, in list order; empty for {@code REMOVED}.
+     */
+    public List<Person> getPeople() {
+        return people;
+    }
+
+    @Override
+    public String toString() {
+        return type + " [" + fromIndex + ", " + toIndex + "]";
+    }
+}
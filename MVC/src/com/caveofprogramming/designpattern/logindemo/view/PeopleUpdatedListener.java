@@ -2,5 +2,10 @@ package com.caveofprogramming.designpattern.logindemo.view;
 
 public interface PeopleUpdatedListener {
 
-    public void onPeopleListUpdated();
+    /**
+     * Called each time the list of people held by the {@code Model} changes.
+     *
+     * @param event what changed, and at which indices of the list.
+     */
+    public void onPeopleListUpdated(PeopleUpdatedEvent event);
 }
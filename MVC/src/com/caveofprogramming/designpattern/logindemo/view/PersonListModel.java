@@ -0,0 +1,79 @@
+package com.caveofprogramming.designpattern.logindemo.view;
+
+import com.caveofprogramming.designpattern.logindemo.model.Person;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>The {@code ListModel} of the people held by the {@code Model}. Unlike a
+ * {@code DefaultListModel}, whose {@code set()} fires an event per element, every
+ * method here changes a whole range of rows and fires a single {@code ListDataEvent}
+ * for it, so the {@code JList} repaints a change of many rows only once.</p>
+ * Like every Swing model, it must only be used on the event dispatch thread.
+ */
+public class PersonListModel extends AbstractListModel<Person> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Person> people = new ArrayList<Person>();
+
+    @Override
+    public int getSize() {
+        return people.size();
+    }
+
+    @Override
+    public Person getElementAt(int index) {
+        return people.get(index);
+    }
+
+    /**
+     * Inserts people starting at the given row.
+     *
+     * @param index  the row of the first person inserted.
+     * @param added  the people to insert.
+     */
+    public void addAll(int index, List<Person> added) {
+        if (added.isEmpty())
+            return;
+        people.addAll(index, added);
+        fireIntervalAdded(this, index, index + added.size() - 1);
+    }
+
+    /**
+     * Replaces the people of the rows starting at the given row.
+     *
+     * @param index   the first row replaced.
+     * @param changed the people shown in those rows from now on.
+     */
+    public void setAll(int index, List<Person> changed) {
+        if (changed.isEmpty())
+            return;
+        for (int i = 0; i < changed.size(); i++)
+            people.set(index + i, changed.get(i));
+        fireContentsChanged(this, index, index + changed.size() - 1);
+    }
+
+    /**
+     * Removes the rows from {@code fromIndex} to {@code toIndex}, both included.
+     */
+    public void removeRange(int fromIndex, int toIndex) {
+        people.subList(fromIndex, toIndex + 1).clear();
+        fireIntervalRemoved(this, fromIndex, toIndex);
+    }
+
+    /**
+     * Replaces every row with the given people.
+     *
+     * @param all the people to show.
+     */
+    public void reload(List<Person> all) {
+        int oldSize = people.size();
+        people.clear();
+        if (oldSize > 0)
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        addAll(0, all);
+    }
+}
@@ -25,11 +25,15 @@ public class View extends JFrame implements ActionListener, PeopleUpdatedListene
     private final JPasswordField repeatPassField;
     private final JButton createUserButton;
     private final JList<Person> userList;
-    private final DefaultListModel<Person> listModel;
+    private final PersonListModel listModel;
+    private PagedPersonListModel pagedListModel;
+    private final JProgressBar progressBar;
+    private final JButton cancelButton;
 
     private CreateUserListener createUserListener;
     private SaveListener saveListener;
     private AppListener appListener;
+    private CancelListener cancelListener;
 
     /**
      * The {@code View} constructor receives a reference to the {@code Model}
@@ -45,8 +49,11 @@ public class View extends JFrame implements ActionListener, PeopleUpdatedListene
         passField = new JPasswordField(10);
         repeatPassField = new JPasswordField(10);
         createUserButton = new JButton("Create user");
-        listModel = new DefaultListModel<Person>();
+        listModel = new PersonListModel();
         userList = new JList<Person>(listModel);
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        cancelButton = new JButton("Cancel");
 
         int margin = 15;
         Border outerBorder = BorderFactory.createEmptyBorder(margin, margin, margin, margin);
@@ -139,8 +146,26 @@ public class View extends JFrame implements ActionListener, PeopleUpdatedListene
         // add to the GUI the JScrollPane that will display the userList element
         add(new JScrollPane(userList), gc);
 
+        // Progress of the background load and save tasks, hidden while none is running
+        JPanel progressPanel = new JPanel(new BorderLayout(10, 0));
+        progressPanel.add(progressBar, BorderLayout.CENTER);
+        progressPanel.add(cancelButton, BorderLayout.LINE_END);
+        progressPanel.setVisible(false);
+
+        gc.anchor = GridBagConstraints.FIRST_LINE_START;
+        gc.gridx = 1;
+        gc.gridy = 6;
+        gc.weightx = 1;
+        gc.weighty = 1;
+        gc.gridwidth = 2;
+        gc.insets = new Insets(0, 15, 10, 15);
+        gc.fill = GridBagConstraints.HORIZONTAL;
+
+        add(progressPanel, gc);
+
         //// Implementation of the Observer Pattern: an example involving buttons ////
         createUserButton.addActionListener(this); // Assign the View itself to listen to the okButton
+        cancelButton.addActionListener(e -> fireCancelEvent());
         /* Notes:
          * - Pass an instance that implements ActionListener interface.
          * - The verb "add" implies the existence of a collection, in this case, a list
@@ -202,10 +227,17 @@ public class View extends JFrame implements ActionListener, PeopleUpdatedListene
 
     /**
      * Shows given error on the View window as a warning message.
+     * It can be called from any thread; the message is always shown
+     * on the event dispatch thread.
      *
      * @param error a string error message.
      */
     public void showError(String error) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> showError(error));
+            return;
+        }
+
         JOptionPane.showMessageDialog(
                 this,
                 error,
@@ -213,6 +245,27 @@ public class View extends JFrame implements ActionListener, PeopleUpdatedListene
                 JOptionPane.WARNING_MESSAGE);
     }
 
+    /**
+     * Shows the progress of a background task, with a button to cancel it.
+     * Must be called on the event dispatch thread.
+     *
+     * @param task    what the task is doing, such as "Saving".
+     * @param percent how much of the task is done, from 0 to 100.
+     */
+    public void showProgress(String task, int percent) {
+        progressBar.setValue(percent);
+        progressBar.setString(task + " " + percent + "%");
+        progressBar.getParent().setVisible(true);
+    }
+
+    /**
+     * Hides the progress bar once no background task is running.
+     * Must be called on the event dispatch thread.
+     */
+    public void hideProgress() {
+        progressBar.getParent().setVisible(false);
+    }
+
     /**
      * Creates a menu bar on the view that shows a "File" menu with a "Save" item.
      *
@@ -239,6 +292,29 @@ public class View extends JFrame implements ActionListener, PeopleUpdatedListene
         return menuBar;
     }
 
+    /**
+     * Makes the list of people show the given paged model instead of the people held
+     * by the {@code Model}. The list then reads the database page by page as the user
+     * scrolls, which suits tables far too big to load at once. New people appear in
+     * the list once they are saved.
+     *
+     * @param pagedListModel the paged model to show.
+     */
+    public void setPagedListModel(PagedPersonListModel pagedListModel) {
+        this.pagedListModel = pagedListModel;
+        // A fixed row size stops the JList from reading every row to measure it.
+        userList.setPrototypeCellValue(new Person(Integer.MAX_VALUE, "Prototype person name", "password"));
+        userList.setModel(pagedListModel);
+    }
+
+    /**
+     * @return the paged model shown by the list of people, or {@code null} if the
+     * list shows the people held by the {@code Model}.
+     */
+    public PagedPersonListModel getPagedListModel() {
+        return pagedListModel;
+    }
+
     /**
      * This setter method accepts any instance that implements the {@code CreateUserListener}
      * interface and set it to {@code createUserListener} field in this class.
@@ -288,6 +364,17 @@ public class View extends JFrame implements ActionListener, PeopleUpdatedListene
         this.appListener = appListener;
     }
 
+    /**
+     * Sets the {@code cancelListener} to the given instance of a class that
+     * implements the {@code CancelListener} interface, which is notified when
+     * the user presses the "Cancel" button of the progress bar.
+     *
+     * @param cancelListener an instance of a class implementing {@code CancelListener}.
+     */
+    public void setCancelListener(CancelListener cancelListener) {
+        this.cancelListener = cancelListener;
+    }
+
     // Verifies the createUserListener reference is not null.
     // Calls the method that handles the user creation on the database.
     private void fireCreateUserEvent(CreateUserEvent event) {
@@ -309,6 +396,12 @@ public class View extends JFrame implements ActionListener, PeopleUpdatedListene
             appListener.onOpen();
     }
 
+    // runs onCancel() implementation on call
+    private void fireCancelEvent() {
+        if (cancelListener != null)
+            cancelListener.onCancel();
+    }
+
     // runs onClose() implementation on call
     private void fireCloseEvent() {
         if (appListener != null)
@@ -316,7 +409,7 @@ public class View extends JFrame implements ActionListener, PeopleUpdatedListene
     }
 
     @Override
-    public void onPeopleListUpdated() {
+    public void onPeopleListUpdated(PeopleUpdatedEvent event) {
         /*
          * Some interpretation of the MVC would force the view
          * to be updated only through the controller, which would
@@ -325,11 +418,30 @@ public class View extends JFrame implements ActionListener, PeopleUpdatedListene
          * Others, as here, have the view listening to the model
          * (but never telling it what to do)
          */
-        listModel.clear();  // clear the list model of the GUI
+        if (pagedListModel != null) {
+            // The paged list shows the database, which only changes on a save or load.
+            if (event.getType() == PeopleUpdatedEvent.Type.CHANGED
+                    || event.getType() == PeopleUpdatedEvent.Type.RELOADED)
+                pagedListModel.refresh();
+            return;
+        }
 
-        // updates the list model in the GUI
-        List<Person> people = model.getPeople();
-        for (Person person : people)
-            listModel.addElement(person);
+        // Each change is applied as one range operation, which fires a single
+        // event to the JList, so adding one person does not rebuild the list.
+        List<Person> people = event.getPeople();
+        switch (event.getType()) {
+            case ADDED:
+                listModel.addAll(event.getFromIndex(), people);
+                break;
+            case REMOVED:
+                listModel.removeRange(event.getFromIndex(), event.getToIndex());
+                break;
+            case CHANGED:
+                listModel.setAll(event.getFromIndex(), people);
+                break;
+            case RELOADED:
+                listModel.reload(people);
+                break;
+        }
     }
 }
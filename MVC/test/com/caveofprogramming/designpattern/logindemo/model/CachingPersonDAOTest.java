@@ -0,0 +1,112 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import org.junit.jupiter.api.*;
+import java.sql.SQLException;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the hits, misses, expiry, eviction and invalidation of the
+ * {@code CachingPersonDAO}, in front of an {@code EmbeddedDatabase}.
+ */
+class CachingPersonDAOTest {
+
+    private PersonDAO dao;
+    private Person bob;
+    private Person sue;
+    private Person ann;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dao = new EmbeddedDAOFactory(new EmbeddedDatabase()).getPersonDAO();
+        bob = new Person("Bob", "letmein");
+        sue = new Person("Sue", "PassHello");
+        ann = new Person("Ann", "secret");
+        dao.addPeople(List.of(bob, sue, ann));
+    }
+
+    @Test
+    void testHitAndMiss() throws SQLException {
+        CachingPersonDAO cache = new CachingPersonDAO(dao, 10);
+
+        assertEquals(bob, cache.getPerson(bob.getId()));
+        assertEquals(1, cache.getMisses());
+        assertEquals(bob, cache.getPerson(bob.getId()));
+        assertEquals(1, cache.getHits());
+
+        // Callers may change the beans they get without changing the cache.
+        cache.getPerson(bob.getId()).setName("Robert");
+        assertEquals("Bob", cache.getPerson(bob.getId()).getName());
+
+        assertNull(cache.getPerson(-1));
+        assertEquals(1, cache.getSize(), "A missing person should not be cached.");
+    }
+
+    @Test
+    void testTimeToLive() throws Exception {
+        CachingPersonDAO cache = new CachingPersonDAO(dao, 10, 50);
+        cache.getPerson(bob.getId());
+        assertEquals(1, cache.getMisses());
+
+        Thread.sleep(100);
+        cache.getPerson(bob.getId());
+        assertEquals(2, cache.getMisses(), "An expired entry should be read again.");
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    void testLeastRecentlyUsedEviction() throws SQLException {
+        CachingPersonDAO cache = new CachingPersonDAO(dao, 2);
+        cache.getPerson(bob.getId());
+        cache.getPerson(sue.getId());
+        // Bob is now used more recently than Sue.
+        cache.getPerson(bob.getId());
+        cache.getPerson(ann.getId());
+
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.getSize());
+        long misses = cache.getMisses();
+        cache.getPerson(bob.getId());
+        assertEquals(misses, cache.getMisses(), "The recently used person should be kept.");
+        cache.getPerson(sue.getId());
+        assertEquals(misses + 1, cache.getMisses(), "The least recently used person should be evicted.");
+    }
+
+    @Test
+    void testWriteInvalidates() throws SQLException {
+        CachingPersonDAO cache = new CachingPersonDAO(dao, 10);
+        Person mine = cache.getPerson(bob.getId());
+
+        mine.setName("Robert");
+        cache.updatePerson(mine);
+        assertEquals(0, cache.getSize(), "The update should drop the entry, not replace it.");
+        assertEquals("Robert", cache.getPerson(bob.getId()).getName());
+
+        cache.deletePerson(bob.getId());
+        assertNull(cache.getPerson(bob.getId()));
+    }
+
+    @Test
+    void testInvalidate() throws SQLException {
+        CachingPersonDAO cache = new CachingPersonDAO(dao, 10);
+        cache.getPerson(sue.getId());
+
+        // Someone else changes the row behind the cache.
+        Person theirs = dao.getPerson(sue.getId());
+        theirs.setName("Susan");
+        dao.updatePerson(theirs);
+        assertEquals("Sue", cache.getPerson(sue.getId()).getName());
+
+        cache.invalidate(sue.getId());
+        assertEquals("Susan", cache.getPerson(sue.getId()).getName());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void testSharedByFactory() {
+        DAOFactory factory = new EmbeddedDAOFactory(new EmbeddedDatabase());
+        assertSame(factory.getCachingPersonDAO(), factory.getCachingPersonDAO());
+    }
+}
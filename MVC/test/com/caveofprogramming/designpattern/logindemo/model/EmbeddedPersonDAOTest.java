@@ -0,0 +1,173 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import org.junit.jupiter.api.*;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the same kind of checks as {@code MySQLPersonDAOTest} against the
+ * {@code EmbeddedPersonDAO}. No database server is needed, so these tests
+ * can run anywhere.
+ */
+class EmbeddedPersonDAOTest {
+
+    private PersonDAO dao;
+
+    @BeforeEach
+    void setUp() {
+        // A new database per test keeps the tests independent of each other.
+        dao = new EmbeddedDAOFactory(new EmbeddedDatabase()).getPersonDAO();
+    }
+
+    @Test
+    void testCreate() throws SQLException {
+        Person person1 = new Person("Bob", "letmein");
+        Person person2 = new Person("Sue", "PassHello");
+
+        dao.addPerson(person1);
+        dao.addPerson(person2);
+
+        List<Person> people = dao.getPeople();
+
+        assertEquals(2, people.size(), "Should be two people in database.");
+
+        assertEquals(person1, people.get(0), "These two people should be the same");
+        assertEquals(person2, people.get(1), "These two people should be the same");
+        assertNotEquals(0, person1.getId(), "The generated id should be written back");
+    }
+
+    @Test
+    void testUpdateAndDelete() throws SQLException {
+        Person person = new Person("Bob", "letmein");
+        dao.addPerson(person);
+
+        person.setName("Robert");
+        assertEquals(1, dao.updatePerson(person));
+        assertEquals("Robert", dao.getPerson(person.getId()).getName());
+        assertTrue(dao.findByName("Bob", 10).isEmpty(), "The name index should be updated");
+
+        assertEquals(1, dao.deletePerson(person.getId()));
+        assertNull(dao.getPerson(person.getId()));
+        assertEquals(0, dao.deletePerson(person.getId()));
+    }
+
+    @Test
+    void testVersionConflict() throws SQLException {
+        Person mine = new Person("Bob", "letmein");
+        dao.addPerson(mine);
+        Person theirs = dao.getPerson(mine.getId());
+
+        theirs.setName("Robert");
+        assertEquals(1, dao.updatePerson(theirs));
+        assertEquals(1, theirs.getVersion(), "The version should be incremented");
+
+        mine.setPassword("secret");
+        OptimisticLockException e = assertThrows(OptimisticLockException.class, () -> dao.updatePerson(mine));
+        assertSame(mine, e.getConflicts().get(0).getMine());
+        assertEquals("Robert", e.getConflicts().get(0).getTheirs().getName());
+        assertEquals("letmein", dao.getPerson(mine.getId()).getPassword(), "The newer row should be kept");
+    }
+
+    @Test
+    void testUpsert() throws SQLException {
+        Person changed = new Person("Bob", "letmein");
+        Person deleted = new Person("Sue", "PassHello");
+        dao.addPeople(List.of(changed, deleted));
+        dao.deletePerson(deleted.getId());
+
+        changed.setName("Robert");
+        Person added = new Person("Anna", "a");
+        UpsertResult result = dao.upsertPeople(List.of(changed, deleted, added));
+
+        assertEquals(List.of(changed), result.getUpdated());
+        assertEquals(List.of(deleted, added), result.getInserted(),
+                "A deleted row should be inserted again, not lost");
+        assertNotEquals(0, added.getId(), "The generated id should be written back");
+        assertEquals("Robert", dao.getPerson(changed.getId()).getName());
+        assertEquals(deleted, dao.getPerson(deleted.getId()));
+        assertEquals(3, dao.countPeople());
+    }
+
+    @Test
+    void testPagingAndFind() throws SQLException {
+        dao.addPeople(List.of(
+                new Person("Anna", "a"),
+                new Person("Bob", "b"),
+                new Person("Bobby", "c"),
+                new Person("Carl", "d")));
+
+        List<Person> firstPage = dao.getPeopleAfter(0, 3);
+        assertEquals(3, firstPage.size());
+        List<Person> secondPage = dao.getPeopleAfter(firstPage.get(2).getId(), 3);
+        assertEquals(1, secondPage.size());
+        assertEquals("Carl", secondPage.get(0).getName());
+
+        assertEquals(4, dao.countPeople());
+        List<Person> pageByOffset = dao.getPeoplePage(2, 3);
+        assertEquals(2, pageByOffset.size());
+        assertEquals("Bobby", pageByOffset.get(0).getName());
+        assertTrue(dao.getPeoplePage(4, 3).isEmpty(), "There should be nothing past the last person");
+
+        List<Person> bobs = dao.findByName("Bob", 10);
+        assertEquals(2, bobs.size());
+        assertEquals("Bob", bobs.get(0).getName());
+        assertEquals("Bobby", bobs.get(1).getName());
+    }
+
+    @Test
+    void testStream() throws SQLException {
+        for (int i = 0; i < 2500; i++)
+            dao.addPerson(new Person("Person " + i, "secret"));
+
+        try (Stream<Person> people = dao.streamPeople()) {
+            List<Integer> ids = people.map(Person::getId).collect(Collectors.toList());
+            assertEquals(2500, ids.size());
+            for (int i = 1; i < ids.size(); i++)
+                assertTrue(ids.get(i - 1) < ids.get(i), "People should be streamed in id order");
+        }
+    }
+
+    @Test
+    void testChangedSince() throws SQLException {
+        Person bob = new Person("Bob", "letmein");
+        Person sue = new Person("Sue", "PassHello");
+        dao.addPerson(bob);
+        dao.addPerson(sue);
+
+        PeopleChanges snapshot = dao.getChangedSince(0);
+        assertTrue(snapshot.isSnapshot());
+        assertEquals(List.of(bob, sue), snapshot.getChanged());
+        assertEquals(snapshot.getWatermark(), dao.getChangedSince(Long.MAX_VALUE).getWatermark());
+
+        bob.setName("Robert");
+        dao.updatePerson(bob);
+        dao.deletePerson(sue.getId());
+        Person ann = new Person("Ann", "secret");
+        dao.addPerson(ann);
+
+        PeopleChanges changes = dao.getChangedSince(snapshot.getWatermark());
+        assertFalse(changes.isSnapshot());
+        assertEquals(List.of(bob, ann), changes.getChanged(), "Only the changed people should be read");
+        assertEquals(List.of(sue.getId()), changes.getDeletedIds(), "The delete should leave a tombstone");
+
+        PeopleChanges none = dao.getChangedSince(changes.getWatermark());
+        assertEquals(0, none.size());
+        assertEquals(changes.getWatermark(), none.getWatermark());
+    }
+
+    @Test
+    void testChangedSinceFutureWatermark() throws SQLException {
+        Person bob = new Person("Bob", "letmein");
+        dao.addPerson(bob);
+        long current = dao.getChangedSince(Long.MAX_VALUE).getWatermark();
+
+        // As from a database that was restored since, or a replica further ahead.
+        PeopleChanges changes = dao.getChangedSince(current + 100);
+        assertTrue(changes.isSnapshot(), "A watermark ahead of the database should get a snapshot");
+        assertEquals(List.of(bob), changes.getChanged());
+        assertEquals(current, changes.getWatermark());
+    }
+}
@@ -0,0 +1,98 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import org.junit.jupiter.api.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the bucket layout of {@code LatencyHistogram}, its precision and its
+ * percentiles, and that values recorded by several threads at once are all counted.
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void testBucketsRoundTrip() {
+        int last = LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE);
+        assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.highestValueOf(last));
+
+        for (int index = 0; index <= last; index++) {
+            long highest = LatencyHistogram.highestValueOf(index);
+            assertEquals(index, LatencyHistogram.indexOf(highest), "The highest value of bucket " + index);
+            if (index < last) {
+                // Buckets are contiguous: the next value starts the next bucket.
+                assertEquals(index + 1, LatencyHistogram.indexOf(highest + 1), "The value after bucket " + index);
+            }
+        }
+    }
+
+    @Test
+    void testRelativeError() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000000; i++) {
+            long value = 1 + (long) (random.nextDouble() * LatencyHistogram.MAX_VALUE);
+            long reported = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value));
+            assertTrue(reported >= value, "A value is reported as its bucket's highest value");
+            assertTrue((double) (reported - value) / value < 1.0 / 64, "Error too large for " + value);
+        }
+        // Small values have a bucket each.
+        for (long value = 0; value < 128; value++)
+            assertEquals(value, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value)));
+    }
+
+    @Test
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+
+        for (long value = 1; value <= 10000; value++)
+            histogram.record(value);
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+        assertWithin(5000, histogram.getPercentile(50));
+        assertWithin(9900, histogram.getPercentile(99));
+        assertEquals(10000, histogram.getPercentile(100), "No percentile is above the maximum");
+        assertEquals(1, histogram.getPercentile(0));
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax(), "Larger values are capped");
+        assertEquals(0, histogram.getPercentile(0), "Negative values are recorded as 0");
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test
+    void testConcurrentRecord() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 8;
+        int values = 100000;
+        List<Thread> recorders = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                for (int value = 1; value <= values; value++)
+                    histogram.record(value);
+            });
+            recorders.add(thread);
+            thread.start();
+        }
+        for (Thread thread : recorders)
+            thread.join();
+
+        assertEquals((long) threads * values, histogram.getCount(), "No value should be lost");
+        assertEquals(values, histogram.getMax());
+        assertEquals((values + 1) / 2.0, histogram.getMean(), 0.001);
+        assertWithin(values / 2, histogram.getPercentile(50));
+    }
+
+    // The reported percentile is the highest value of the bucket holding the expected one.
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual - expected <= expected / 64,
+                "Expected about " + expected + " got " + actual);
+    }
+}
@@ -0,0 +1,146 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the {@code MappedLogDAO} reads back what it wrote, across segments and
+ * after the log is opened again.
+ */
+class MappedLogDAOTest {
+
+    // Records of "entry-NN" take 28 bytes, so four fit in a segment.
+    private static final int SEGMENT_SIZE = 128;
+
+    private Path directory;
+    private MappedLogDAO log;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("log");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (log != null)
+            log.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    @Test
+    void testRoundTrip() {
+        log = new MappedLogDAO(directory, SEGMENT_SIZE, 0, 0);
+        addEntries(0, 3);
+
+        List<Log> entries = log.getEntries(10);
+        assertEquals(3, entries.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(3 - i, entries.get(i).getId(), "The newest entry should come first.");
+            assertEquals(message(2 - i), entries.get(i).getMessage());
+        }
+        assertEquals(2, log.getEntries(2).size());
+    }
+
+    @Test
+    void testRoll() {
+        log = new MappedLogDAO(directory, SEGMENT_SIZE, 0, 0);
+        addEntries(0, 10);
+
+        assertEquals(3, log.getSegmentCount());
+        List<Log> entries = log.getEntries(10);
+        assertEquals(10, entries.size(), "Entries should be read across segments.");
+        assertEquals(message(0), entries.get(9).getMessage());
+    }
+
+    @Test
+    void testMaxSegments() {
+        log = new MappedLogDAO(directory, SEGMENT_SIZE, 2, 0);
+        addEntries(0, 10);
+
+        assertEquals(2, log.getSegmentCount());
+        List<Log> entries = log.getEntries(10);
+        assertEquals(6, entries.size(), "Only the last two segments should be kept.");
+        assertEquals(message(4), entries.get(5).getMessage());
+    }
+
+    @Test
+    void testMaxAgeWithoutRoll() throws InterruptedException {
+        log = new MappedLogDAO(directory, SEGMENT_SIZE, 0, 50);
+        addEntries(0, 5);
+        assertEquals(2, log.getSegmentCount());
+
+        Thread.sleep(100);
+        // Reading alone should expire the old segment.
+        assertEquals(1, log.getEntries(10).size());
+        assertEquals(1, log.getSegmentCount());
+    }
+
+    @Test
+    void testReopen() {
+        log = new MappedLogDAO(directory, SEGMENT_SIZE, 0, 0);
+        addEntries(0, 6);
+        log.close();
+        assertThrows(IllegalStateException.class, () -> log.addEntry("closed"));
+
+        log = new MappedLogDAO(directory, SEGMENT_SIZE, 0, 0);
+        assertEquals(6, log.getEntries(10).size());
+        log.addEntry(message(6));
+        Log latest = log.getEntries(1).get(0);
+        assertEquals(7, latest.getId(), "The ids should carry on after the reopen.");
+        assertEquals(message(6), latest.getMessage());
+    }
+
+    @Test
+    void testReopenAfterTornWrite() throws IOException {
+        log = new MappedLogDAO(directory, SEGMENT_SIZE, 0, 0);
+        addEntries(0, 2);
+        log.close();
+
+        // A record whose body reached the disk but whose leading length did not.
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(24);
+            torn.putLong(System.currentTimeMillis()).putInt(3).put("entry-02".getBytes()).putInt(28).flip();
+            channel.write(torn, 2 * 28 + 4);
+        }
+
+        log = new MappedLogDAO(directory, SEGMENT_SIZE, 0, 0);
+        assertEquals(2, log.getEntries(10).size(), "The torn record should not be read.");
+        log.addEntry(message(2));
+        assertEquals(3, log.getEntries(10).size());
+        assertEquals(message(2), log.getEntries(1).get(0).getMessage());
+    }
+
+    @Test
+    void testStrayFileIgnored() throws IOException {
+        Files.createFile(directory.resolve("segment-backup.log"));
+
+        log = new MappedLogDAO(directory, SEGMENT_SIZE, 0, 0);
+        log.addEntry(message(0));
+        assertEquals(1, log.getEntries(10).size());
+    }
+
+    private void addEntries(int from, int to) {
+        for (int i = from; i < to; i++)
+            log.addEntry(message(i));
+    }
+
+    private static String message(int i) {
+        return String.format("entry-%02d", i);
+    }
+}
@@ -0,0 +1,58 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import org.junit.jupiter.api.*;
+import java.sql.SQLException;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks what {@code MeteredPersonDAO} records for the calls it measures, using an
+ * {@code EmbeddedDatabase} so no database server is needed.
+ */
+class MeteredPersonDAOTest {
+
+    private MeteredPersonDAO dao;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dao = new MeteredPersonDAO(new EmbeddedDAOFactory(new EmbeddedDatabase()).getPersonDAO());
+        dao.addPerson(new Person("Bob", "letmein"));
+        dao.addPerson(new Person("Sue", "PassHello"));
+        dao.reset();
+    }
+
+    @Test
+    void testCalls() throws SQLException {
+        dao.getPeople();
+        dao.getPerson(12345);
+
+        MetricsSnapshot snapshot = dao.getSnapshot();
+        assertEquals(1, snapshot.getOperation("getPeople").getCalls());
+        assertEquals(2, snapshot.getOperation("getPeople").getRows());
+        assertEquals(0, snapshot.getOperation("getPerson").getRows(), "A missing person is no row");
+    }
+
+    @Test
+    void testStreamRecordedWhenConsumed() throws SQLException {
+        // Not closed: running out of rows is enough to record it.
+        assertEquals(2, dao.streamPeople().count());
+
+        MetricsSnapshot.Operation stream = dao.getSnapshot().getOperation("streamPeople");
+        assertEquals(1, stream.getCalls());
+        assertEquals(2, stream.getRows());
+        assertEquals(0, stream.getErrors());
+    }
+
+    @Test
+    void testStreamFailure() throws SQLException {
+        try (Stream<Person> people = dao.streamPeople()) {
+            assertThrows(IllegalStateException.class, () -> people.forEach(person -> {
+                throw new IllegalStateException("Broken row");
+            }));
+        }
+
+        MetricsSnapshot.Operation stream = dao.getSnapshot().getOperation("streamPeople");
+        assertEquals(1, stream.getCalls(), "Closing the stream should not record it again");
+        assertEquals(1, stream.getErrors());
+    }
+}
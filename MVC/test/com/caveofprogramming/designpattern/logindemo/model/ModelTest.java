@@ -0,0 +1,274 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import com.caveofprogramming.designpattern.logindemo.view.PeopleUpdatedEvent;
+import org.junit.jupiter.api.*;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the {@code Model} writes its changes to the database, using an
+ * {@code EmbeddedDatabase} so no database server is needed.
+ */
+class ModelTest {
+
+    private PersonDAO dao;
+    private Model model;
+
+    @BeforeEach
+    void setUp() {
+        dao = new EmbeddedDAOFactory(new EmbeddedDatabase()).getPersonDAO();
+        model = new Model(new AsyncPersonDAO(dao));
+    }
+
+    @AfterEach
+    void tearDown() {
+        model.close(5000);
+    }
+
+    @Test
+    void testSave() throws SQLException {
+        Person person = new Person("Bob", "letmein");
+        model.addPerson(person);
+        assertTrue(model.hasUnsavedChanges());
+
+        model.save().join();
+
+        assertFalse(model.hasUnsavedChanges(), "Everything should be saved.");
+        assertNotEquals(0, person.getId(), "The generated id should be written back");
+        assertEquals(person, dao.getPerson(person.getId()));
+    }
+
+    @Test
+    void testPeopleById() {
+        // Equal people are different rows, so both are kept.
+        Person first = new Person("Bob", "letmein");
+        Person second = new Person("Bob", "letmein");
+        model.addPerson(first);
+        model.addPerson(second);
+        model.addPerson(first);
+        assertEquals(2, model.getPeople().size());
+
+        model.save().join();
+        assertSame(second, model.getPerson(second.getId()), "Saved people should be found by id.");
+
+        model.deletePerson(first);
+        assertNull(model.getPerson(first.getId()));
+        assertEquals(0, model.getPeople().indexOf(second));
+    }
+
+    @Test
+    void testConflictResolved() throws SQLException {
+        Person person = new Person("Bob", "letmein");
+        model.addPerson(person);
+        model.save().join();
+
+        Person theirs = dao.getPerson(person.getId());
+        theirs.setName("Robert");
+        dao.updatePerson(theirs);
+
+        model.setConflictResolver(ConflictResolver.KEEP_MINE);
+        model.updatePerson(person, "Bobby", "letmein");
+        assertThrows(CompletionException.class, () -> model.save().join());
+        assertTrue(model.hasUnsavedChanges(), "The kept change should be saved again.");
+
+        model.save().join();
+        assertEquals("Bobby", dao.getPerson(person.getId()).getName());
+    }
+
+    @Test
+    void testRefresh() throws SQLException {
+        Person bob = new Person("Bob", "letmein");
+        Person sue = new Person("Sue", "PassHello");
+        dao.addPerson(bob);
+        dao.addPerson(sue);
+        model.load().join();
+        assertNotEquals(0, model.getWatermark());
+
+        // Someone else changes the table.
+        Person theirs = dao.getPerson(bob.getId());
+        theirs.setName("Robert");
+        dao.updatePerson(theirs);
+        dao.deletePerson(sue.getId());
+        Person ann = new Person("Ann", "secret");
+        dao.addPerson(ann);
+
+        model.refresh().join();
+
+        assertEquals(2, model.getPeople().size());
+        assertEquals("Robert", model.getPerson(bob.getId()).getName());
+        assertNull(model.getPerson(sue.getId()), "The deleted person should be removed");
+        assertEquals(ann, model.getPerson(ann.getId()));
+        assertFalse(model.hasUnsavedChanges(), "Changes read from the database are not unsaved");
+    }
+
+    @Test
+    void testAutosaveBatch() throws SQLException {
+        // A delay long enough that only the batch size can trigger the flush.
+        model.setAutosave(3, 60000);
+        model.addPerson(new Person("Anna", "a"));
+        model.addPerson(new Person("Bob", "b"));
+        assertTrue(model.hasUnsavedChanges(), "Two changes should still be queued.");
+
+        model.addPerson(new Person("Carl", "c"));
+        model.flush().join();
+        assertEquals(3, dao.countPeople(), "The third change should flush the batch.");
+    }
+
+    @Test
+    void testSaveWaitsForFlush() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        model.close(5000);
+        model = new Model(new AsyncPersonDAO(gated(dao, release, started, running, overlaps)));
+
+        Person first = new Person("Anna", "a");
+        model.addPerson(first);
+        CompletableFuture<Void> flush = model.flush();
+        Person second = new Person("Bob", "b");
+        model.addPerson(second);
+        CompletableFuture<Void> save = model.save();
+
+        Thread.sleep(100);
+        assertEquals(1, started.get(), "The save should wait for the running flush.");
+        release.countDown();
+        save.join();
+        flush.join();
+
+        assertEquals(2, started.get());
+        assertEquals(0, overlaps.get(), "The save and the flush should not write at the same time.");
+        assertEquals(2, dao.countPeople());
+        assertNotEquals(0, second.getId());
+    }
+
+    @Test
+    void testQueuedSaveWaitsForAutosave() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        model.close(5000);
+        model = new Model(new AsyncPersonDAO(gated(dao, release, started, running, overlaps)));
+
+        dao.addPerson(new Person("Anna", "a"));
+        model.load().join();
+        Person person = model.getPeople().get(0);
+
+        // The autosave flush starts with the first change and holds the person.
+        model.setAutosave(1, 60000);
+        model.updatePerson(person, "Anna", "b");
+        Thread.sleep(100);
+        assertEquals(1, started.get());
+
+        // A save written by the caller, as the SaveWorker does, while the flush is running.
+        CompletableFuture<ChangeSet> queued = model.queueChanges();
+        model.stopAutosave();
+        model.updatePerson(person, "Anna", "c");
+        assertFalse(queued.isDone(), "The changes should only be taken after the autosave.");
+
+        release.countDown();
+        ChangeSet changes = queued.join();
+        assertEquals(1, changes.size());
+        try {
+            changes.write(model.getPersonDAO().getPersonDAO());
+        } finally {
+            model.finishSave(changes);
+        }
+
+        assertEquals(0, overlaps.get(), "The save and the autosave should not write at the same time.");
+        assertFalse(model.hasUnsavedChanges());
+        assertEquals("c", dao.getPerson(person.getId()).getPassword(), "The newer edit should be kept.");
+    }
+
+    @Test
+    void testEditWhileSaving() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        model.close(5000);
+        model = new Model(new AsyncPersonDAO(gated(dao, release, started, new AtomicInteger(),
+                new AtomicInteger())));
+
+        Person person = new Person("Anna", "a");
+        model.addPerson(person);
+        CompletableFuture<Void> save = model.save();
+        Thread.sleep(100);
+        // The save writes a copy taken before this edit.
+        model.updatePerson(person, "Anna", "b");
+        release.countDown();
+        save.join();
+
+        assertNotEquals(0, person.getId(), "The generated id should be given to the person");
+        assertEquals("a", dao.getPerson(person.getId()).getPassword());
+        assertTrue(model.hasUnsavedChanges(), "The edit made while saving should be kept.");
+
+        model.save().join();
+        assertEquals("b", dao.getPerson(person.getId()).getPassword());
+    }
+
+    @Test
+    void testIdsAssignedFireOnlySavedRows() {
+        List<PeopleUpdatedEvent> events = new ArrayList<PeopleUpdatedEvent>();
+        model.addPerson(new Person("Anna", "a"));
+        model.addLoadedPeople(List.of(new Person(1000, "Bob", "b", 1)));
+        model.addPerson(new Person("Carl", "c"));
+        model.setPeopleUpdatedListener(events::add);
+
+        model.save().join();
+
+        assertEquals(2, events.size(), "The unchanged row between them should not be reported.");
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(PeopleUpdatedEvent.Type.CHANGED, events.get(i).getType());
+            assertEquals(i * 2, events.get(i).getFromIndex());
+            assertEquals(i * 2, events.get(i).getToIndex());
+        }
+    }
+
+    @Test
+    void testAutosaveDelay() throws Exception {
+        model.setAutosave(1000, 50);
+        model.addPerson(new Person("Sue", "PassHello"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dao.countPeople() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(1, dao.countPeople(), "The change should be written after the delay.");
+    }
+
+    @Test
+    void testCloseWritesQueuedChanges() throws SQLException {
+        model.setAutosave(1000, 60000);
+        model.addPerson(new Person("Anna", "a"));
+        model.addPerson(new Person("Bob", "b"));
+
+        assertTrue(model.close(5000));
+        assertEquals(2, dao.countPeople(), "Closing should write the queued changes.");
+    }
+
+    // Holds every upsertPeople() call until release is counted down, and counts the calls
+    // that start while another one is still running.
+    private static PersonDAO gated(PersonDAO dao, CountDownLatch release, AtomicInteger started,
+                                   AtomicInteger running, AtomicInteger overlaps) {
+        return (PersonDAO) Proxy.newProxyInstance(PersonDAO.class.getClassLoader(),
+                new Class<?>[] {PersonDAO.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("upsertPeople"))
+                        return method.invoke(dao, args);
+                    started.incrementAndGet();
+                    if (running.incrementAndGet() > 1)
+                        overlaps.incrementAndGet();
+                    try {
+                        release.await();
+                        return method.invoke(dao, args);
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                });
+    }
+}
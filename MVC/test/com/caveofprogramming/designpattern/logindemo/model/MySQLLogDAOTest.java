@@ -0,0 +1,114 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import org.junit.jupiter.api.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks how the {@code MySQLLogDAO} batches its entries and writes them when it is
+ * flushed or shut down. The batches are recorded instead of inserted, so no database
+ * server is needed.
+ */
+class MySQLLogDAOTest {
+
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+
+    @Test
+    void testBatching() throws InterruptedException {
+        MySQLLogDAO log = recording(64, MySQLLogDAO.BackpressurePolicy.BLOCK, 10, null);
+        addEntries(log, 25);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (batches.size() < 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        Thread.sleep(100);
+        assertEquals(2, batches.size(), "Only full batches should be written before the timer.");
+        assertEquals(10, batches.get(0).size());
+        assertEquals(20, written());
+
+        log.shutdown();
+        assertEquals(3, batches.size());
+        assertEquals(List.of("entry-20", "entry-21", "entry-22", "entry-23", "entry-24"), batches.get(2));
+    }
+
+    @Test
+    void testFlushDoesNotWaitForTimer() {
+        MySQLLogDAO log = recording(64, MySQLLogDAO.BackpressurePolicy.BLOCK, 10, null);
+        addEntries(log, 3);
+
+        long start = System.currentTimeMillis();
+        log.flush();
+        assertTrue(System.currentTimeMillis() - start < 5000, "flush() should not wait for the timer.");
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).size());
+        log.shutdown();
+    }
+
+    @Test
+    void testShutdownWritesPending() {
+        MySQLLogDAO log = recording(64, MySQLLogDAO.BackpressurePolicy.BLOCK, 100, null);
+        addEntries(log, 7);
+
+        log.shutdown();
+        assertEquals(7, written());
+    }
+
+    @Test
+    void testDropWhenFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MySQLLogDAO log = recording(4, MySQLLogDAO.BackpressurePolicy.DROP, 1, () -> {
+            started.countDown();
+            await(release);
+        });
+
+        // The flusher takes the first entry and is held while the ring fills up.
+        log.addEntry("first");
+        started.await();
+        addEntries(log, 7);
+
+        assertEquals(3, log.getDroppedEntries());
+        release.countDown();
+        log.shutdown();
+        assertEquals(5, written());
+    }
+
+    // A DAO that records each batch, after running the given action, instead of inserting it.
+    private MySQLLogDAO recording(int capacity, MySQLLogDAO.BackpressurePolicy policy, int batchSize,
+                                  Runnable action) {
+        return new MySQLLogDAO(capacity, policy, batchSize, 60000, 10) {
+            @Override
+            void insert(List<Log> batch) {
+                if (action != null)
+                    action.run();
+                List<String> messages = new ArrayList<String>();
+                for (Log entry : batch)
+                    messages.add(entry.getMessage());
+                batches.add(messages);
+            }
+        };
+    }
+
+    private static void addEntries(LogDAO log, int count) {
+        for (int i = 0; i < count; i++)
+            log.addEntry(String.format("entry-%02d", i));
+    }
+
+    private int written() {
+        int count = 0;
+        for (List<String> batch : batches)
+            count += batch.size();
+        return count;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -70,4 +70,17 @@ class MySQLPersonDAOTest {
         assertEquals(person1, people.get(0), "These two people should be the same");
         assertEquals(person2, people.get(1), "These two people should be the same");
     }
+
+    /* Run with -Dlogindemo.db.replicas=localhost:3307,... to point the reads at
+     * replicas of the local database. Within the sticky window the read goes to the
+     * primary, so it sees the write even if the replicas lag behind.*/
+    @Test
+    void testReadYourWrites() throws SQLException {
+        Person person = new Person("Bob", "letmein");
+        PersonDAO dao = DAOFactory.getFactory(DAOFactory.MYSQL).getPersonDAO();
+
+        dao.addPerson(person);
+
+        assertEquals(person, dao.getPerson(person.getId()), "The new person should be read back at once");
+    }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import org.junit.jupiter.api.*;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the {@code RingBuffer} hands every published element to the consumer
+ * once and in order, and refuses elements when it is full.
+ */
+class RingBufferTest {
+
+    @Test
+    void testOfferAndDrain() {
+        RingBuffer<Integer> ring = new RingBuffer<Integer>(4);
+        for (int i = 0; i < 3; i++)
+            assertTrue(ring.offer(i));
+        assertEquals(3, ring.size());
+
+        List<Integer> drain = new ArrayList<Integer>();
+        assertEquals(2, ring.drainTo(drain, 2));
+        assertEquals(List.of(0, 1), drain);
+        assertEquals(1, ring.drainTo(drain, 10));
+        assertEquals(List.of(0, 1, 2), drain);
+        assertEquals(0, ring.size());
+        assertEquals(3, ring.published());
+    }
+
+    @Test
+    void testFull() {
+        // The capacity is rounded up to a power of two.
+        RingBuffer<Integer> ring = new RingBuffer<Integer>(5);
+        for (int i = 0; i < 8; i++)
+            assertTrue(ring.offer(i));
+        assertFalse(ring.offer(8), "A full ring should refuse the element.");
+
+        List<Integer> drain = new ArrayList<Integer>();
+        ring.drainTo(drain, 1);
+        assertTrue(ring.offer(8), "A drained slot should be free again.");
+    }
+
+    @Test
+    void testWrapAround() {
+        RingBuffer<Integer> ring = new RingBuffer<Integer>(4);
+        List<Integer> drain = new ArrayList<Integer>();
+        for (int lap = 0; lap < 10; lap++) {
+            for (int i = 0; i < 3; i++)
+                assertTrue(ring.offer(lap * 3 + i));
+            ring.drainTo(drain, 3);
+        }
+
+        assertEquals(30, drain.size());
+        for (int i = 0; i < drain.size(); i++)
+            assertEquals(Integer.valueOf(i), drain.get(i));
+    }
+
+    @Test
+    void testManyProducers() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 20000;
+        RingBuffer<int[]> ring = new RingBuffer<int[]>(64);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(new int[] {producer, i}))
+                        Thread.yield();
+                }
+            });
+            // A failed check stops the consumer, so the producers must not keep the test running.
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+
+        // Each producer's elements must arrive in the order it published them.
+        int[] next = new int[producers];
+        List<int[]> drain = new ArrayList<int[]>();
+        int received = 0;
+        long deadline = System.currentTimeMillis() + 10000;
+        while (received < producers * perProducer && System.currentTimeMillis() < deadline) {
+            drain.clear();
+            ring.drainTo(drain, 32);
+            for (int[] element : drain) {
+                assertEquals(next[element[0]], element[1]);
+                next[element[0]]++;
+            }
+            received += drain.size();
+            if (drain.isEmpty())
+                Thread.yield();
+        }
+        for (Thread thread : threads)
+            thread.join(1000);
+
+        assertEquals(producers * perProducer, received);
+        assertEquals(0, ring.size());
+    }
+}
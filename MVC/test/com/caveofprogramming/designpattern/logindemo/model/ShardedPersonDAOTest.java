@@ -0,0 +1,96 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import org.junit.jupiter.api.*;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the {@code ShardedPersonDAO} against three {@code EmbeddedDatabase}s
+ * standing in for the shard databases.
+ */
+class ShardedPersonDAOTest {
+
+    private List<PersonDAO> shards;
+    private PersonDAO dao;
+
+    @BeforeEach
+    void setUp() {
+        List<DAOFactory> factories = new ArrayList<DAOFactory>();
+        for (int i = 0; i < 3; i++)
+            factories.add(new EmbeddedDAOFactory(new EmbeddedDatabase()));
+        ShardedDAOFactory factory = new ShardedDAOFactory(factories);
+
+        dao = factory.getPersonDAO();
+        shards = ((ShardedPersonDAO) dao).getShards();
+    }
+
+    @Test
+    void testRouting() throws SQLException {
+        List<Person> people = new ArrayList<Person>();
+        for (int i = 0; i < 300; i++)
+            people.add(new Person("Person " + i, "secret"));
+        dao.addPeople(people);
+
+        for (PersonDAO shard : shards)
+            assertTrue(shard.countPeople() > 0, "Every shard should hold some people");
+        assertEquals(300, dao.countPeople());
+
+        Person person = people.get(42);
+        int shard = ((ShardedPersonDAO) dao).getShard(person.getId());
+        assertEquals(person, shards.get(shard).getPerson(person.getId()), "The person should be on its shard");
+        assertEquals(person, dao.getPerson(person.getId()));
+    }
+
+    @Test
+    void testMergedInIdOrder() throws SQLException {
+        for (int i = 0; i < 100; i++)
+            dao.addPerson(new Person("Person " + i, "secret"));
+
+        List<Person> people = dao.getPeople();
+        assertEquals(100, people.size());
+        for (int i = 1; i < people.size(); i++)
+            assertTrue(people.get(i - 1).getId() < people.get(i).getId(), "People should be merged in id order");
+
+        try (Stream<Person> stream = dao.streamPeople()) {
+            assertEquals(people, stream.collect(Collectors.toList()));
+        }
+        assertEquals(people.subList(10, 20), dao.getPeoplePage(10, 10));
+        assertEquals(people.subList(50, 55), dao.getPeopleAfter(people.get(49).getId(), 5));
+    }
+
+    @Test
+    void testIdsAllocatedAfterExistingPeople() throws SQLException {
+        dao.addPerson(new Person("Bob", "letmein"));
+        Person existing = dao.getPeople().get(0);
+
+        // A new DAO over the same shards continues after the highest id.
+        PersonDAO reopened = new ShardedPersonDAO(shards);
+        Person person = new Person("Sue", "PassHello");
+        reopened.addPerson(person);
+        assertTrue(person.getId() > existing.getId(), "Ids should not be reused");
+    }
+
+    @Test
+    void testIdsUniqueAcrossInstances() throws SQLException {
+        // Two application instances over the same shards, writing in turns.
+        PersonDAO other = new ShardedPersonDAO(shards);
+        List<Person> people = new ArrayList<Person>();
+        for (int i = 0; i < 2 * ShardedPersonDAO.ID_BLOCK; i++) {
+            Person person = new Person("Person " + i, "secret");
+            (i % 2 == 0 ? dao : other).addPerson(person);
+            people.add(person);
+        }
+        assertEquals(people.size(), dao.countPeople(), "No person should overwrite another");
+
+        // Deleting the highest id does not make it available again.
+        Person last = dao.getPeople().get(people.size() - 1);
+        dao.deletePerson(last.getId());
+        Person person = new Person("Sue", "PassHello");
+        new ShardedPersonDAO(shards).addPerson(person);
+        assertTrue(person.getId() > last.getId(), "Ids should not be reused");
+    }
+}
@@ -0,0 +1,149 @@
+package com.caveofprogramming.designpattern.logindemo.model;
+
+import org.junit.jupiter.api.*;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks how the {@code StatementCache} reuses, releases and evicts statements, on a
+ * fake connection that records the statements it prepares.
+ */
+class StatementCacheTest {
+
+    private final List<FakeStatement> prepared = new ArrayList<FakeStatement>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private Connection conn;
+    private StatementCache cache;
+
+    @BeforeEach
+    void setUp() {
+        conn = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("prepareStatement"))
+                        throw new UnsupportedOperationException(method.getName());
+                    FakeStatement statement = new FakeStatement((String) args[0]);
+                    prepared.add(statement);
+                    return statement.proxy;
+                });
+        cache = new StatementCache(conn, 2, hits, misses);
+    }
+
+    @Test
+    void testReuse() throws SQLException {
+        PreparedStatement first = cache.prepare(conn, "SELECT 1", StatementCache.NO_KEYS_FLAG);
+        first.setInt(1, 42);
+        first.close();
+        assertTrue(first.isClosed());
+
+        PreparedStatement second = cache.prepare(conn, "SELECT 1", StatementCache.NO_KEYS_FLAG);
+        assertEquals(1, prepared.size(), "The statement should be reused.");
+        assertEquals(1, hits.sum());
+        assertEquals(1, prepared.get(0).clears, "The parameters should be cleared on release.");
+        assertFalse(prepared.get(0).closed);
+        assertSame(conn, second.getConnection());
+    }
+
+    @Test
+    void testStaleWrapper() throws SQLException {
+        PreparedStatement first = cache.prepare(conn, "SELECT 1", StatementCache.NO_KEYS_FLAG);
+        first.close();
+        PreparedStatement second = cache.prepare(conn, "SELECT 1", StatementCache.NO_KEYS_FLAG);
+        assertNotSame(first, second, "Every borrow should get its own wrapper.");
+
+        assertThrows(SQLException.class, () -> first.setInt(1, 1));
+        first.close();
+        assertFalse(second.isClosed(), "Closing a stale wrapper should not release the next borrow.");
+        second.setInt(1, 2);
+        assertEquals(1, prepared.get(0).sets);
+    }
+
+    @Test
+    void testInUse() throws SQLException {
+        PreparedStatement first = cache.prepare(conn, "SELECT 1", StatementCache.NO_KEYS_FLAG);
+        PreparedStatement second = cache.prepare(conn, "SELECT 1", StatementCache.NO_KEYS_FLAG);
+
+        assertEquals(2, prepared.size(), "A statement in use should not be shared.");
+        assertEquals(1, cache.size());
+        second.close();
+        assertTrue(prepared.get(1).closed, "The uncached statement should really be closed.");
+        assertFalse(first.isClosed());
+    }
+
+    @Test
+    void testEviction() throws SQLException {
+        cache.prepare(conn, "SELECT 1", StatementCache.NO_KEYS_FLAG).close();
+        cache.prepare(conn, "SELECT 2", StatementCache.NO_KEYS_FLAG).close();
+        // Use the first statement again, so the second one is the least recently used.
+        cache.prepare(conn, "SELECT 1", StatementCache.NO_KEYS_FLAG).close();
+        cache.prepare(conn, "SELECT 3", StatementCache.NO_KEYS_FLAG).close();
+
+        assertEquals(2, cache.size());
+        assertTrue(prepared.get(1).closed, "The least recently used statement should be closed.");
+        assertFalse(prepared.get(0).closed);
+    }
+
+    @Test
+    void testEvictionWhileInUse() throws SQLException {
+        PreparedStatement borrowed = cache.prepare(conn, "SELECT 1", StatementCache.NO_KEYS_FLAG);
+        cache.prepare(conn, "SELECT 2", StatementCache.NO_KEYS_FLAG).close();
+        cache.prepare(conn, "SELECT 3", StatementCache.NO_KEYS_FLAG).close();
+
+        assertFalse(prepared.get(0).closed, "A borrowed statement should stay open until it is released.");
+        borrowed.setInt(1, 1);
+        borrowed.close();
+        assertTrue(prepared.get(0).closed);
+    }
+
+    @Test
+    void testReleaseAllAndCloseAll() throws SQLException {
+        PreparedStatement forgotten = cache.prepare(conn, "SELECT 1", StatementCache.NO_KEYS_FLAG);
+        cache.releaseAll();
+        assertTrue(forgotten.isClosed());
+        cache.prepare(conn, "SELECT 1", StatementCache.NO_KEYS_FLAG);
+        assertEquals(1, prepared.size(), "A released statement should be reused.");
+
+        cache.closeAll();
+        assertEquals(0, cache.size());
+        assertTrue(prepared.get(0).closed);
+    }
+
+    // A statement that only counts what is done to it.
+    private static class FakeStatement {
+        private final PreparedStatement proxy;
+        private boolean closed;
+        private int clears;
+        private int sets;
+
+        private FakeStatement(String sql) {
+            proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, (p, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                closed = true;
+                                return null;
+                            case "isClosed":
+                                return closed;
+                            case "clearParameters":
+                                clears++;
+                                return null;
+                            case "clearBatch":
+                                return null;
+                            case "setInt":
+                                sets++;
+                                return null;
+                            case "toString":
+                                return sql;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+}